@@ -0,0 +1,64 @@
+package com.example.android.sunshine.app;
+
+import android.database.MatrixCursor;
+import android.test.AndroidTestCase;
+import android.text.format.DateUtils;
+
+import com.example.android.sunshine.app.data.WeatherContract;
+
+/*
+    Checks the ranges ForecastRowDiff notifies the forecast list of, for the changes a sync makes.
+ */
+public class TestForecastRowDiff extends AndroidTestCase {
+
+    // Far enough from today that the days are always formatted the same way
+    static private final long FIRST_DATE = WeatherContract.normalizeDate(
+            System.currentTimeMillis() + 30 * DateUtils.DAY_IN_MILLIS);
+
+    static private final int DAY_COUNT = 14;
+
+    // In the order of ForecastFragment's FORECAST_COLUMNS
+    static private final String[] COLUMNS = {
+            "_id", "date", "short_desc", "max", "min", "location_setting", "weather_id",
+            "coord_lat", "coord_long"
+    };
+
+    private ForecastRow[] buildRows(int firstDay, int dayCount, double maxTemp) {
+        MatrixCursor cursor = new MatrixCursor(COLUMNS);
+        for (int day = firstDay; day < firstDay + dayCount; day++) {
+            cursor.addRow(new Object[]{day, FIRST_DATE + day * DateUtils.DAY_IN_MILLIS, "Clear",
+                    maxTemp, 10.0, "99705", 800, 64.7488, -147.353});
+        }
+        ForecastRow[] rows = ForecastRow.fromCursor(mContext, cursor);
+        cursor.close();
+        return rows;
+    }
+
+    public void testSameForecastHasNoChanges() {
+        ForecastRowDiff diff = ForecastRowDiff.compute(
+                buildRows(0, DAY_COUNT, 20.0), buildRows(0, DAY_COUNT, 20.0));
+        assertTrue("Error: the same forecast has changes: " + diff, diff.isEmpty());
+    }
+
+    public void testDailySync() {
+        // A day later, yesterday is gone, today moves to the first row, and a day is added
+        ForecastRowDiff diff = ForecastRowDiff.compute(
+                buildRows(0, DAY_COUNT, 20.0), buildRows(1, DAY_COUNT, 20.0));
+        assertEquals("Error: wrong ranges for a daily sync",
+                "-0x1 ~0x1 +13x1", diff.toString());
+    }
+
+    public void testChangedTemperatures() {
+        ForecastRowDiff diff = ForecastRowDiff.compute(
+                buildRows(0, DAY_COUNT, 20.0), buildRows(0, DAY_COUNT, 25.0));
+        assertEquals("Error: wrong ranges for new temperatures",
+                "~0x" + DAY_COUNT, diff.toString());
+    }
+
+    public void testFromAndToEmptyList() {
+        assertEquals("+0x" + DAY_COUNT, ForecastRowDiff.compute(
+                new ForecastRow[0], buildRows(0, DAY_COUNT, 20.0)).toString());
+        assertEquals("-0x" + DAY_COUNT, ForecastRowDiff.compute(
+                buildRows(0, DAY_COUNT, 20.0), new ForecastRow[0]).toString());
+    }
+}
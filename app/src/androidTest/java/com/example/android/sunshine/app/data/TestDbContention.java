@@ -0,0 +1,152 @@
+package com.example.android.sunshine.app.data;
+
+import android.content.ContentUris;
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+import android.net.Uri;
+import android.os.Build;
+import android.test.AndroidTestCase;
+import android.util.Log;
+
+import com.example.android.sunshine.app.data.WeatherContract.LocationEntry;
+import com.example.android.sunshine.app.data.WeatherContract.WeatherEntry;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/*
+    Stress test of the database while a sync is writing: a writer keeps rewriting a forecast
+    through the provider while several readers query today's weather, the way the widgets, Muzei,
+    the wearables and the loaders do.  The p50 and p99 latencies of the readers are logged under
+    the TestDbContention tag.
+ */
+public class TestDbContention extends AndroidTestCase {
+
+    public static final String LOG_TAG = TestDbContention.class.getSimpleName();
+
+    static private final int READER_COUNT = 4;
+    static private final long RUN_MILLIS = 5000;
+    static private final int FORECAST_DAYS = 14;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        mContext.getContentResolver().delete(WeatherEntry.CONTENT_URI, null, null);
+        mContext.getContentResolver().delete(LocationEntry.CONTENT_URI, null, null);
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        mContext.getContentResolver().delete(WeatherEntry.CONTENT_URI, null, null);
+        mContext.getContentResolver().delete(LocationEntry.CONTENT_URI, null, null);
+        super.tearDown();
+    }
+
+    public void testWriteAheadLogging() {
+        if (Build.VERSION.SDK_INT < Build.VERSION_CODES.HONEYCOMB) {
+            return;
+        }
+        WeatherDbHelper dbHelper = new WeatherDbHelper(mContext);
+        SQLiteDatabase db = dbHelper.getWritableDatabase();
+        Cursor cursor = db.rawQuery("PRAGMA journal_mode", null);
+        assertTrue(cursor.moveToFirst());
+        assertEquals("Error: the database isn't in write-ahead logging mode",
+                "wal", cursor.getString(0).toLowerCase());
+        cursor.close();
+        dbHelper.close();
+    }
+
+    public void testReaderLatencyDuringWrites() throws Throwable {
+        Uri locationUri = mContext.getContentResolver().insert(LocationEntry.CONTENT_URI,
+                TestUtilities.createNorthPoleLocationValues());
+        final long locationRowId = ContentUris.parseId(locationUri);
+        mContext.getContentResolver().bulkInsert(WeatherEntry.CONTENT_URI,
+                TestProviderThroughput.createWeatherValues(locationRowId, FORECAST_DAYS));
+
+        final Uri todayUri = WeatherEntry.buildWeatherLocationWithDate(TestUtilities.TEST_LOCATION,
+                WeatherContract.normalizeDate(TestUtilities.TEST_DATE));
+        final AtomicBoolean running = new AtomicBoolean(true);
+        final List<Throwable> errors = Collections.synchronizedList(new ArrayList<Throwable>());
+        final int[] writeCount = new int[1];
+
+        Thread writer = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    while (running.get()) {
+                        // every day is replaced, just like a sync where everything changed
+                        mContext.getContentResolver().bulkInsert(WeatherEntry.CONTENT_URI,
+                                TestProviderThroughput.createWeatherValues(locationRowId, FORECAST_DAYS));
+                        writeCount[0]++;
+                    }
+                } catch (Throwable t) {
+                    errors.add(t);
+                }
+            }
+        });
+
+        final long[][] latencies = new long[READER_COUNT][(int) RUN_MILLIS * 10];
+        final int[] readCounts = new int[READER_COUNT];
+        List<Thread> readers = new ArrayList<Thread>();
+        for (int i = 0; i < READER_COUNT; i++) {
+            final int reader = i;
+            final long[] readerLatencies = latencies[i];
+            readers.add(new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        int count = 0;
+                        while (running.get() && count < readerLatencies.length) {
+                            long start = System.nanoTime();
+                            Cursor cursor = mContext.getContentResolver().query(todayUri,
+                                    null, null, null, null);
+                            assertTrue(cursor.moveToFirst());
+                            cursor.close();
+                            readerLatencies[count++] = System.nanoTime() - start;
+                        }
+                        readCounts[reader] = count;
+                    } catch (Throwable t) {
+                        errors.add(t);
+                    }
+                }
+            }));
+        }
+
+        writer.start();
+        for (Thread reader : readers) {
+            reader.start();
+        }
+        Thread.sleep(RUN_MILLIS);
+        running.set(false);
+        writer.join();
+        for (Thread reader : readers) {
+            reader.join();
+        }
+        if (!errors.isEmpty()) {
+            throw errors.get(0);
+        }
+
+        int readCount = 0;
+        for (int count : readCounts) {
+            readCount += count;
+        }
+        long[] allLatencies = new long[readCount];
+        int index = 0;
+        for (int i = 0; i < READER_COUNT; i++) {
+            System.arraycopy(latencies[i], 0, allLatencies, index, readCounts[i]);
+            index += readCounts[i];
+        }
+        assertTrue("Error: no read completed", readCount > 0);
+        Arrays.sort(allLatencies);
+
+        long p50Millis = allLatencies[readCount / 2] / 1000000;
+        long p99Millis = allLatencies[Math.min(readCount - 1, readCount * 99 / 100)] / 1000000;
+        // Only logged, as wall-clock latencies vary too much between devices and emulators to
+        // assert on; the write-ahead logging that keeps readers off the writer is tested above.
+        Log.i(LOG_TAG, readCount + " reads during " + writeCount[0] + " writes: p50 "
+                + p50Millis + " ms, p99 " + p99Millis + " ms");
+    }
+}
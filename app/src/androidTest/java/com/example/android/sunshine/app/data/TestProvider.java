@@ -16,8 +16,12 @@
 package com.example.android.sunshine.app.data;
 
 import android.content.ComponentName;
+import android.content.ContentProviderClient;
+import android.content.ContentProviderOperation;
+import android.content.ContentProviderResult;
 import android.content.ContentUris;
 import android.content.ContentValues;
+import android.content.OperationApplicationException;
 import android.content.pm.PackageManager;
 import android.content.pm.ProviderInfo;
 import android.database.Cursor;
@@ -30,6 +34,8 @@ import android.util.Log;
 import com.example.android.sunshine.app.data.WeatherContract.LocationEntry;
 import com.example.android.sunshine.app.data.WeatherContract.WeatherEntry;
 
+import java.util.ArrayList;
+
 /*
     Note: This is not a complete set of tests of the Sunshine ContentProvider, but it does test
     that at least the basic functionality has been implemented correctly.
@@ -512,4 +518,198 @@ public class TestProvider extends AndroidTestCase {
         }
         cursor.close();
     }
+
+    // The sync writes the location, its forecast and deletes the old days with one batch: they
+    // must all be committed together, and the location must keep its id.
+    public void testApplyBatch() throws Exception {
+        ContentValues testValues = TestUtilities.createNorthPoleLocationValues();
+        Uri locationUri = mContext.getContentResolver().insert(LocationEntry.CONTENT_URI, testValues);
+        long locationRowId = ContentUris.parseId(locationUri);
+
+        ContentValues[] weatherValues = createBulkInsertWeatherValues(locationRowId);
+
+        ArrayList<ContentProviderOperation> operations = new ArrayList<ContentProviderOperation>();
+        operations.add(ContentProviderOperation.newInsert(LocationEntry.CONTENT_URI)
+                .withValues(testValues)
+                .build());
+        for (ContentValues values : weatherValues) {
+            values.remove(WeatherEntry.COLUMN_LOC_KEY);
+            operations.add(ContentProviderOperation.newInsert(WeatherEntry.CONTENT_URI)
+                    .withValues(values)
+                    .withValueBackReference(WeatherEntry.COLUMN_LOC_KEY, 0)
+                    .build());
+        }
+        // delete the first day again
+        operations.add(ContentProviderOperation.newDelete(WeatherEntry.CONTENT_URI)
+                .withSelection(WeatherEntry.COLUMN_DATE + " <= ?",
+                        new String[]{Long.toString(WeatherContract.normalizeDate(TestUtilities.TEST_DATE))})
+                .build());
+
+        TestUtilities.TestContentObserver weatherObserver = TestUtilities.getTestContentObserver();
+        mContext.getContentResolver().registerContentObserver(WeatherEntry.CONTENT_URI, true, weatherObserver);
+
+        ContentProviderResult[] results = mContext.getContentResolver().applyBatch(
+                WeatherContract.CONTENT_AUTHORITY, operations);
+
+        weatherObserver.waitForNotificationOrFail();
+        mContext.getContentResolver().unregisterContentObserver(weatherObserver);
+
+        assertEquals("Error: the location was inserted again instead of being updated",
+                locationRowId, ContentUris.parseId(results[0].uri));
+
+        Cursor cursor = mContext.getContentResolver().query(
+                LocationEntry.CONTENT_URI, null, null, null, null);
+        assertEquals(1, cursor.getCount());
+        cursor.close();
+
+        cursor = mContext.getContentResolver().query(
+                WeatherEntry.CONTENT_URI,
+                null,
+                null,
+                null,
+                WeatherEntry.COLUMN_DATE + " ASC"
+        );
+        assertEquals(BULK_INSERT_RECORDS_TO_INSERT - 1, cursor.getCount());
+        cursor.moveToFirst();
+        for ( int i = 1; i < BULK_INSERT_RECORDS_TO_INSERT; i++, cursor.moveToNext() ) {
+            weatherValues[i].put(WeatherEntry.COLUMN_LOC_KEY, locationRowId);
+            weatherValues[i].put(WeatherEntry.COLUMN_DATE, WeatherContract.normalizeDate(
+                    weatherValues[i].getAsLong(WeatherEntry.COLUMN_DATE)));
+            TestUtilities.validateCurrentRecord("testApplyBatch.  Error validating WeatherEntry " + i,
+                    cursor, weatherValues[i]);
+        }
+        cursor.close();
+    }
+
+    // A row the database rejects fails the whole batch as an OperationApplicationException, and
+    // nothing of it is committed.
+    public void testApplyBatchRollsBackRejectedRow() throws Exception {
+        ContentValues testValues = TestUtilities.createNorthPoleLocationValues();
+        ContentValues weatherValues = TestUtilities.createWeatherValues(0);
+        // no location: the row breaks a NOT NULL constraint
+        weatherValues.remove(WeatherEntry.COLUMN_LOC_KEY);
+
+        ArrayList<ContentProviderOperation> operations = new ArrayList<ContentProviderOperation>();
+        operations.add(ContentProviderOperation.newInsert(LocationEntry.CONTENT_URI)
+                .withValues(testValues)
+                .build());
+        operations.add(ContentProviderOperation.newInsert(WeatherEntry.CONTENT_URI)
+                .withValues(weatherValues)
+                .build());
+
+        try {
+            mContext.getContentResolver().applyBatch(WeatherContract.CONTENT_AUTHORITY, operations);
+            fail("Error: a batch with a rejected row was applied");
+        } catch (OperationApplicationException e) {
+            // expected
+        }
+
+        Cursor cursor = mContext.getContentResolver().query(
+                LocationEntry.CONTENT_URI, null, null, null, null);
+        assertEquals("Error: the location of a failed batch was committed", 0, cursor.getCount());
+        cursor.close();
+    }
+
+    // Writes are notified as weather/<location>/<date>: the observers of another location must
+    // not be woken up.
+    public void testNotificationsAreScopedToLocation() {
+        ContentValues testValues = TestUtilities.createNorthPoleLocationValues();
+        Uri locationUri = mContext.getContentResolver().insert(LocationEntry.CONTENT_URI, testValues);
+        long locationRowId = ContentUris.parseId(locationUri);
+
+        TestUtilities.TestContentObserver locationObserver = TestUtilities.getTestContentObserver();
+        mContext.getContentResolver().registerContentObserver(
+                WeatherEntry.buildWeatherLocation(TestUtilities.TEST_LOCATION), true, locationObserver);
+        TestUtilities.TestContentObserver dayObserver = TestUtilities.getTestContentObserver();
+        mContext.getContentResolver().registerContentObserver(
+                WeatherEntry.buildWeatherLocationWithDate(TestUtilities.TEST_LOCATION,
+                        TestUtilities.TEST_DATE), true, dayObserver);
+        TestUtilities.TestContentObserver otherLocationObserver = TestUtilities.getTestContentObserver();
+        mContext.getContentResolver().registerContentObserver(
+                WeatherEntry.buildWeatherLocation("94043"), true, otherLocationObserver);
+
+        mContext.getContentResolver().bulkInsert(WeatherEntry.CONTENT_URI,
+                createBulkInsertWeatherValues(locationRowId));
+
+        locationObserver.waitForNotificationOrFail();
+        dayObserver.waitForNotificationOrFail();
+        assertFalse("Error: the observer of another location was notified",
+                otherLocationObserver.mContentChanged);
+
+        mContext.getContentResolver().unregisterContentObserver(locationObserver);
+        mContext.getContentResolver().unregisterContentObserver(dayObserver);
+        mContext.getContentResolver().unregisterContentObserver(otherLocationObserver);
+        otherLocationObserver.mHT.quit();
+    }
+
+    // Today's row is served from memory after the first query, until a write touches it.
+    public void testTodayRowCache() {
+        ContentValues testValues = TestUtilities.createNorthPoleLocationValues();
+        Uri locationUri = mContext.getContentResolver().insert(LocationEntry.CONTENT_URI, testValues);
+        long locationRowId = ContentUris.parseId(locationUri);
+
+        long today = System.currentTimeMillis();
+        ContentValues weatherValues = TestUtilities.createWeatherValues(locationRowId);
+        weatherValues.put(WeatherEntry.COLUMN_DATE, today);
+        mContext.getContentResolver().insert(WeatherEntry.CONTENT_URI, weatherValues);
+
+        ContentProviderClient client = mContext.getContentResolver()
+                .acquireContentProviderClient(WeatherContract.CONTENT_AUTHORITY);
+        TodayRowCache cache = ((WeatherProvider) client.getLocalContentProvider()).getTodayRowCache();
+        long hits = cache.getHitCount();
+        long misses = cache.getMissCount();
+
+        Uri todayUri = WeatherEntry.buildWeatherLocationWithDate(TestUtilities.TEST_LOCATION, today);
+        String[] projection = {WeatherEntry.COLUMN_MAX_TEMP, LocationEntry.COLUMN_CITY_NAME};
+
+        Cursor cursor = mContext.getContentResolver().query(todayUri, projection, null, null, null);
+        assertTrue(cursor.moveToFirst());
+        assertEquals(75.0, cursor.getDouble(0));
+        assertEquals("North Pole", cursor.getString(1));
+        cursor.close();
+        assertEquals(misses + 1, cache.getMissCount());
+
+        cursor = mContext.getContentResolver().query(todayUri, projection, null, null, null);
+        assertTrue(cursor.moveToFirst());
+        assertEquals(75.0, cursor.getDouble(0));
+        cursor.close();
+        assertEquals(hits + 1, cache.getHitCount());
+
+        // a new forecast for today must not be hidden by the cached one
+        weatherValues.put(WeatherEntry.COLUMN_MAX_TEMP, 80);
+        mContext.getContentResolver().bulkInsert(WeatherEntry.CONTENT_URI,
+                new ContentValues[]{weatherValues});
+
+        cursor = mContext.getContentResolver().query(todayUri, projection, null, null, null);
+        assertTrue(cursor.moveToFirst());
+        assertEquals(80.0, cursor.getDouble(0));
+        cursor.close();
+        assertEquals(misses + 2, cache.getMissCount());
+
+        client.release();
+    }
+
+    // While a write is in progress, the cache neither serves nor stores a row: the write may be
+    // committed before its rows are invalidated.
+    public void testTodayRowCacheHeldOffDuringWrite() {
+        TodayRowCache cache = new TodayRowCache();
+        long today = WeatherContract.normalizeDate(System.currentTimeMillis());
+        Object[] staleRow = new Object[TodayRowCache.ROW_PROJECTION.length];
+        cache.put(TestUtilities.TEST_LOCATION, today, staleRow, cache.getGeneration());
+
+        cache.beginWrite();
+        assertNull("Error: a row was served during a write",
+                cache.get(TestUtilities.TEST_LOCATION, today));
+        // a row read during the write, possibly from before its commit
+        long generation = cache.getGeneration();
+        cache.put(TestUtilities.TEST_LOCATION, today, staleRow, generation);
+        cache.invalidate(TestUtilities.TEST_LOCATION);
+        cache.endWrite();
+
+        assertNull("Error: a row read during a write was stored",
+                cache.get(TestUtilities.TEST_LOCATION, today));
+        cache.put(TestUtilities.TEST_LOCATION, today, staleRow, generation);
+        assertNull("Error: a row read during a write was stored after it",
+                cache.get(TestUtilities.TEST_LOCATION, today));
+    }
 }
@@ -0,0 +1,168 @@
+package com.example.android.sunshine.app.data;
+
+import android.content.ContentUris;
+import android.content.ContentValues;
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteQueryBuilder;
+import android.net.Uri;
+import android.os.SystemClock;
+import android.test.AndroidTestCase;
+import android.util.Log;
+
+import com.example.android.sunshine.app.data.WeatherContract.LocationEntry;
+import com.example.android.sunshine.app.data.WeatherContract.WeatherEntry;
+
+/*
+    Measures the throughput of the provider's compiled statement fast paths against the way rows
+    used to be written and read, i.e. SQLiteDatabase.insert for each row and SQLiteQueryBuilder
+    for each query.  The rows/sec of both are logged under the TestProviderThroughput tag.
+ */
+public class TestProviderThroughput extends AndroidTestCase {
+
+    public static final String LOG_TAG = TestProviderThroughput.class.getSimpleName();
+
+    // A sync, a year of syncs, and a stress run.
+    static private final int[] ROW_COUNTS = {14, 1000, 100000};
+
+    static private final int QUERY_COUNT = 1000;
+
+    static private final String[] QUERY_PROJECTION = {
+            WeatherEntry.TABLE_NAME + "." + WeatherEntry._ID,
+            WeatherEntry.COLUMN_DATE,
+            WeatherEntry.COLUMN_SHORT_DESC,
+            WeatherEntry.COLUMN_MAX_TEMP,
+            WeatherEntry.COLUMN_MIN_TEMP,
+            LocationEntry.COLUMN_LOCATION_SETTING,
+            WeatherEntry.COLUMN_WEATHER_ID,
+            LocationEntry.COLUMN_COORD_LAT,
+            LocationEntry.COLUMN_COORD_LONG
+    };
+
+    private WeatherDbHelper mDbHelper;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        mDbHelper = new WeatherDbHelper(mContext);
+        deleteAllRecords();
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        deleteAllRecords();
+        mDbHelper.close();
+        super.tearDown();
+    }
+
+    private void deleteAllRecords() {
+        mContext.getContentResolver().delete(WeatherEntry.CONTENT_URI, null, null);
+        mContext.getContentResolver().delete(LocationEntry.CONTENT_URI, null, null);
+    }
+
+    private long insertLocation() {
+        Uri locationUri = mContext.getContentResolver().insert(LocationEntry.CONTENT_URI,
+                TestUtilities.createNorthPoleLocationValues());
+        return ContentUris.parseId(locationUri);
+    }
+
+    static ContentValues[] createWeatherValues(long locationRowId, int rowCount) {
+        long millisecondsInADay = 1000*60*60*24;
+        ContentValues[] returnContentValues = new ContentValues[rowCount];
+
+        for (int i = 0; i < rowCount; i++) {
+            ContentValues weatherValues = TestUtilities.createWeatherValues(locationRowId);
+            weatherValues.put(WeatherEntry.COLUMN_DATE, TestUtilities.TEST_DATE + i * millisecondsInADay);
+            returnContentValues[i] = weatherValues;
+        }
+        return returnContentValues;
+    }
+
+    public void testInsertThroughput() {
+        for (int rowCount : ROW_COUNTS) {
+            long locationRowId = insertLocation();
+
+            // before: one SQLiteDatabase.insert per row, in a transaction
+            ContentValues[] values = createWeatherValues(locationRowId, rowCount);
+            SQLiteDatabase db = mDbHelper.getWritableDatabase();
+            long start = SystemClock.elapsedRealtime();
+            db.beginTransaction();
+            try {
+                for (ContentValues value : values) {
+                    value.put(WeatherEntry.COLUMN_DATE,
+                            WeatherContract.normalizeDate(value.getAsLong(WeatherEntry.COLUMN_DATE)));
+                    db.insert(WeatherEntry.TABLE_NAME, null, value);
+                }
+                db.setTransactionSuccessful();
+            } finally {
+                db.endTransaction();
+            }
+            long beforeMillis = SystemClock.elapsedRealtime() - start;
+            mContext.getContentResolver().delete(WeatherEntry.CONTENT_URI, null, null);
+
+            // after: the provider's compiled insert
+            values = createWeatherValues(locationRowId, rowCount);
+            start = SystemClock.elapsedRealtime();
+            int insertCount = mContext.getContentResolver().bulkInsert(WeatherEntry.CONTENT_URI, values);
+            long afterMillis = SystemClock.elapsedRealtime() - start;
+
+            assertEquals(rowCount, insertCount);
+            Cursor cursor = mContext.getContentResolver().query(
+                    WeatherEntry.CONTENT_URI, null, null, null, null);
+            assertEquals(rowCount, cursor.getCount());
+            cursor.close();
+
+            Log.i(LOG_TAG, "insert " + rowCount + " rows: before " + rowsPerSecond(rowCount, beforeMillis)
+                    + " rows/sec, after " + rowsPerSecond(rowCount, afterMillis) + " rows/sec");
+            deleteAllRecords();
+        }
+    }
+
+    public void testQueryThroughput() {
+        for (int rowCount : ROW_COUNTS) {
+            long locationRowId = insertLocation();
+            ContentValues[] values = createWeatherValues(locationRowId, rowCount);
+            mContext.getContentResolver().bulkInsert(WeatherEntry.CONTENT_URI, values);
+
+            long date = WeatherContract.normalizeDate(TestUtilities.TEST_DATE);
+            Uri uri = WeatherEntry.buildWeatherLocationWithDate(TestUtilities.TEST_LOCATION, date);
+
+            // before: SQLiteQueryBuilder builds the join SQL on every query
+            SQLiteQueryBuilder queryBuilder = new SQLiteQueryBuilder();
+            queryBuilder.setTables(WeatherEntry.TABLE_NAME + " INNER JOIN " + LocationEntry.TABLE_NAME
+                    + " ON " + WeatherEntry.TABLE_NAME + "." + WeatherEntry.COLUMN_LOC_KEY
+                    + " = " + LocationEntry.TABLE_NAME + "." + LocationEntry._ID);
+            SQLiteDatabase db = mDbHelper.getReadableDatabase();
+            long start = SystemClock.elapsedRealtime();
+            for (int i = 0; i < QUERY_COUNT; i++) {
+                Cursor cursor = queryBuilder.query(db, QUERY_PROJECTION,
+                        LocationEntry.TABLE_NAME + "." + LocationEntry.COLUMN_LOCATION_SETTING
+                                + " = ? AND " + WeatherEntry.COLUMN_DATE + " = ? ",
+                        new String[]{TestUtilities.TEST_LOCATION, Long.toString(date)},
+                        null, null, null);
+                assertEquals(1, cursor.getCount());
+                cursor.close();
+            }
+            long beforeMillis = SystemClock.elapsedRealtime() - start;
+
+            // after: the provider reuses the SQL of the projection
+            start = SystemClock.elapsedRealtime();
+            for (int i = 0; i < QUERY_COUNT; i++) {
+                Cursor cursor = mContext.getContentResolver().query(uri, QUERY_PROJECTION,
+                        null, null, null);
+                assertEquals(1, cursor.getCount());
+                cursor.close();
+            }
+            long afterMillis = SystemClock.elapsedRealtime() - start;
+
+            Log.i(LOG_TAG, "query with " + rowCount + " rows stored: before "
+                    + rowsPerSecond(QUERY_COUNT, beforeMillis) + " queries/sec, after "
+                    + rowsPerSecond(QUERY_COUNT, afterMillis) + " queries/sec");
+            deleteAllRecords();
+        }
+    }
+
+    private static long rowsPerSecond(int rowCount, long millis) {
+        return rowCount * 1000L / Math.max(1, millis);
+    }
+}
@@ -0,0 +1,89 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app;
+
+import android.content.Context;
+import android.database.Cursor;
+import android.database.CursorWrapper;
+import android.net.Uri;
+import android.support.v4.content.CursorLoader;
+
+/**
+ * A CursorLoader that also formats the rows of the forecast list on its background thread, so
+ * the adapter doesn't have to while the list scrolls, and compares them with the rows it loaded
+ * before, so the adapter only updates the rows that changed.
+ */
+class ForecastLoader extends CursorLoader {
+
+    /**
+     * The forecast, along with its rows, and how they changed since the rows loaded before.
+     */
+    static class ForecastCursor extends CursorWrapper {
+        final ForecastRow[] rows;
+        // null when nothing was loaded before
+        final ForecastRow[] previousRows;
+        final ForecastRowDiff diff;
+
+        ForecastCursor(Cursor cursor, ForecastRow[] rows, ForecastRow[] previousRows,
+                       ForecastRowDiff diff) {
+            super(cursor);
+            this.rows = rows;
+            this.previousRows = previousRows;
+            this.diff = diff;
+        }
+    }
+
+    // The rows last delivered, which the next ones are compared with
+    private volatile ForecastRow[] mDeliveredRows;
+
+    ForecastLoader(Context context, Uri uri, String[] projection, String selection,
+                   String[] selectionArgs, String sortOrder) {
+        super(context, uri, projection, selection, selectionArgs, sortOrder);
+    }
+
+    @Override
+    public Cursor loadInBackground() {
+        Cursor cursor = super.loadInBackground();
+        if (cursor == null) {
+            return null;
+        }
+        // CursorLoader has registered its observer on the cursor, which the wrapper keeps
+        try {
+            ForecastRow[] rows = ForecastRow.fromCursor(getContext(), cursor);
+            ForecastRow[] previousRows = mDeliveredRows;
+            ForecastRowDiff diff = previousRows != null
+                    ? ForecastRowDiff.compute(previousRows, rows) : null;
+            return new ForecastCursor(cursor, rows, previousRows, diff);
+        } catch (RuntimeException ex) {
+            cursor.close();
+            throw ex;
+        }
+    }
+
+    @Override
+    public void deliverResult(Cursor cursor) {
+        if (cursor instanceof ForecastCursor && !isReset()) {
+            mDeliveredRows = ((ForecastCursor) cursor).rows;
+        }
+        super.deliverResult(cursor);
+    }
+
+    @Override
+    protected void onReset() {
+        super.onReset();
+        mDeliveredRows = null;
+    }
+}
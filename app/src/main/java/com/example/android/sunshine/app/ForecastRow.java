@@ -0,0 +1,102 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app;
+
+import android.content.Context;
+import android.database.Cursor;
+import android.text.TextUtils;
+
+/**
+ * Everything a row of the forecast list shows, formatted ahead of time, so that binding a row
+ * only sets views.
+ */
+class ForecastRow {
+
+    final long date;
+    final int weatherId;
+    // The icon for a future day, and the art for today
+    final int iconResource;
+    final int artResource;
+    // null when Sunshine is using local graphics
+    final String artUrl;
+    final String transitionName;
+    final String dateText;
+    // The date of today's row, when it has its own layout
+    final String longDateText;
+    final String description;
+    final String descriptionContent;
+    final String highText;
+    final String highContent;
+    final String lowText;
+    final String lowContent;
+
+    private ForecastRow(Context context, SunshineSettings settings, Cursor cursor, int position) {
+        date = cursor.getLong(ForecastFragment.COL_WEATHER_DATE);
+        weatherId = cursor.getInt(ForecastFragment.COL_WEATHER_CONDITION_ID);
+
+        iconResource = Utility.getIconResourceForWeatherCondition(weatherId);
+        artResource = Utility.getArtResourceForWeatherCondition(weatherId);
+        artUrl = settings.usingLocalGraphics ? null : settings.getArtUrl(weatherId);
+
+        // this enables better animations. even if we lose state due to a device rotation,
+        // the animator can use this to re-find the original view.  It's named after the date,
+        // which the row keeps when days are added or removed before it.
+        transitionName = "iconView" + date;
+
+        dateText = Utility.getFriendlyDayString(context, date, false);
+        // only the first day can be today
+        longDateText = position == 0 ? Utility.getFriendlyDayString(context, date, true) : dateText;
+
+        description = Utility.getStringForWeatherCondition(context, weatherId);
+        descriptionContent = context.getString(R.string.a11y_forecast, description);
+
+        double high = cursor.getDouble(ForecastFragment.COL_WEATHER_MAX_TEMP);
+        highText = Utility.formatTemperature(context, high, settings.isMetric);
+        highContent = context.getString(R.string.a11y_high_temp, highText);
+
+        double low = cursor.getDouble(ForecastFragment.COL_WEATHER_MIN_TEMP);
+        lowText = Utility.formatTemperature(context, low, settings.isMetric);
+        lowContent = context.getString(R.string.a11y_low_temp, lowText);
+    }
+
+    /**
+     * @return whether the row shows the same as the other one.
+     */
+    boolean hasSameContent(ForecastRow other) {
+        return date == other.date
+                && iconResource == other.iconResource
+                && artResource == other.artResource
+                && TextUtils.equals(artUrl, other.artUrl)
+                && dateText.equals(other.dateText)
+                && longDateText.equals(other.longDateText)
+                && description.equals(other.description)
+                && highText.equals(other.highText)
+                && lowText.equals(other.lowText);
+    }
+
+    /**
+     * @return the rows of every day of the cursor, in its order.
+     */
+    static ForecastRow[] fromCursor(Context context, Cursor cursor) {
+        SunshineSettings settings = SunshineSettings.get(context);
+        ForecastRow[] rows = new ForecastRow[cursor.getCount()];
+        for (int i = 0; i < rows.length; i++) {
+            cursor.moveToPosition(i);
+            rows[i] = new ForecastRow(context, settings, cursor, i);
+        }
+        return rows;
+    }
+}
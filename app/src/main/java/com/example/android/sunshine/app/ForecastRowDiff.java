@@ -0,0 +1,136 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app;
+
+import android.support.v7.widget.RecyclerView;
+
+import java.util.Arrays;
+
+/**
+ * The changes between two lists of forecast rows, as the ranges of rows to notify a
+ * RecyclerView.Adapter of.
+ *
+ * Both lists are sorted by date and have one row per date, so they're merged in a single pass
+ * rather than compared with a general purpose diff.  The ranges are in the order they have to be
+ * dispatched in, each position taking the previous ranges into account.
+ */
+class ForecastRowDiff {
+
+    private static final int OP_INSERT = 0;
+    private static final int OP_REMOVE = 1;
+    private static final int OP_CHANGE = 2;
+
+    // Three ints per range: the op, its position and its row count
+    private int[] mRanges = new int[3 * 4];
+    private int mRangeCount;
+
+    private ForecastRowDiff() {
+    }
+
+    /**
+     * Computes the changes turning the old rows into the new ones, off the main thread.
+     */
+    static ForecastRowDiff compute(ForecastRow[] oldRows, ForecastRow[] newRows) {
+        ForecastRowDiff diff = new ForecastRowDiff();
+        int oldIndex = 0;
+        int newIndex = 0;
+        // The position in the list as the ranges found so far have changed it
+        int position = 0;
+        while (oldIndex < oldRows.length || newIndex < newRows.length) {
+            if (newIndex == newRows.length
+                    || (oldIndex < oldRows.length && oldRows[oldIndex].date < newRows[newIndex].date)) {
+                diff.add(OP_REMOVE, position);
+                oldIndex++;
+            } else if (oldIndex == oldRows.length || oldRows[oldIndex].date > newRows[newIndex].date) {
+                diff.add(OP_INSERT, position);
+                newIndex++;
+                position++;
+            } else {
+                // The first row may use its own layout, so moving in or out of it is a change.
+                if (!oldRows[oldIndex].hasSameContent(newRows[newIndex])
+                        || (oldIndex == 0) != (newIndex == 0)) {
+                    diff.add(OP_CHANGE, position);
+                }
+                oldIndex++;
+                newIndex++;
+                position++;
+            }
+        }
+        return diff;
+    }
+
+    private void add(int op, int position) {
+        if (mRangeCount > 0) {
+            int last = 3 * (mRangeCount - 1);
+            // Removing rows keeps the position, inserting and changing them moves it on
+            int next = op == OP_REMOVE ? mRanges[last + 1] : mRanges[last + 1] + mRanges[last + 2];
+            if (mRanges[last] == op && next == position) {
+                mRanges[last + 2]++;
+                return;
+            }
+        }
+        if (3 * (mRangeCount + 1) > mRanges.length) {
+            mRanges = Arrays.copyOf(mRanges, mRanges.length * 2);
+        }
+        int range = 3 * mRangeCount++;
+        mRanges[range] = op;
+        mRanges[range + 1] = position;
+        mRanges[range + 2] = 1;
+    }
+
+    /**
+     * @return whether the new rows are the same as the old ones.
+     */
+    boolean isEmpty() {
+        return mRangeCount == 0;
+    }
+
+    /**
+     * Notifies the adapter of the ranges of rows inserted, removed and changed.
+     */
+    void dispatchTo(RecyclerView.Adapter adapter) {
+        for (int range = 0; range < 3 * mRangeCount; range += 3) {
+            int position = mRanges[range + 1];
+            int count = mRanges[range + 2];
+            switch (mRanges[range]) {
+                case OP_INSERT:
+                    adapter.notifyItemRangeInserted(position, count);
+                    break;
+                case OP_REMOVE:
+                    adapter.notifyItemRangeRemoved(position, count);
+                    break;
+                case OP_CHANGE:
+                    adapter.notifyItemRangeChanged(position, count);
+                    break;
+            }
+        }
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder builder = new StringBuilder();
+        for (int range = 0; range < 3 * mRangeCount; range += 3) {
+            if (range > 0) {
+                builder.append(' ');
+            }
+            builder.append("+-~".charAt(mRanges[range]))
+                    .append(mRanges[range + 1])
+                    .append('x')
+                    .append(mRanges[range + 2]);
+        }
+        return builder.toString();
+    }
+}
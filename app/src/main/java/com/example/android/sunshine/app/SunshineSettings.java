@@ -0,0 +1,128 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.preference.PreferenceManager;
+
+import com.example.android.sunshine.shared.WeatherConditions;
+
+import java.util.Locale;
+
+/**
+ * The settings of Sunshine, as read from the default SharedPreferences.
+ *
+ * A snapshot is immutable, and a new one is only built when one of its preferences changes, so
+ * the UI, the sync adapter and the widgets read the settings without a lock, a lookup in the
+ * preferences or the resolution of a key, however often they do.
+ */
+public final class SunshineSettings {
+
+    public final String location;
+    // Whether the location was picked on a map, and so has a latitude and longitude
+    public final boolean hasLatLon;
+    public final float latitude;
+    public final float longitude;
+    public final boolean isMetric;
+    public final boolean usingLocalGraphics;
+    // The URL of each kind of art of WeatherConditions in the art pack
+    private final String[] mArtUrls = new String[WeatherConditions.ART_COUNT];
+
+    private static volatile SunshineSettings sSettings;
+
+    // SharedPreferences only keeps weak references to its listeners.
+    private static SharedPreferences.OnSharedPreferenceChangeListener sListener;
+
+    /**
+     * @return the current settings.
+     */
+    public static SunshineSettings get(Context context) {
+        SunshineSettings settings = sSettings;
+        if (settings == null) {
+            settings = load(context.getApplicationContext());
+        }
+        return settings;
+    }
+
+    private static synchronized SunshineSettings load(final Context context) {
+        if (sSettings == null) {
+            SharedPreferences prefs = PreferenceManager.getDefaultSharedPreferences(context);
+            final String[] keys = {
+                    context.getString(R.string.pref_location_key),
+                    context.getString(R.string.pref_location_latitude),
+                    context.getString(R.string.pref_location_longitude),
+                    context.getString(R.string.pref_units_key),
+                    context.getString(R.string.pref_art_pack_key)
+            };
+            sListener = new SharedPreferences.OnSharedPreferenceChangeListener() {
+                @Override
+                public void onSharedPreferenceChanged(SharedPreferences sharedPreferences,
+                                                      String key) {
+                    for (String settingKey : keys) {
+                        if (settingKey.equals(key)) {
+                            sSettings = new SunshineSettings(context, sharedPreferences);
+                            return;
+                        }
+                    }
+                }
+            };
+            prefs.registerOnSharedPreferenceChangeListener(sListener);
+            sSettings = new SunshineSettings(context, prefs);
+        }
+        return sSettings;
+    }
+
+    private SunshineSettings(Context context, SharedPreferences prefs) {
+        location = prefs.getString(context.getString(R.string.pref_location_key),
+                context.getString(R.string.pref_location_default));
+
+        String latitudeKey = context.getString(R.string.pref_location_latitude);
+        String longitudeKey = context.getString(R.string.pref_location_longitude);
+        hasLatLon = prefs.contains(latitudeKey) && prefs.contains(longitudeKey);
+        latitude = prefs.getFloat(latitudeKey, Utility.DEFAULT_LATLONG);
+        longitude = prefs.getFloat(longitudeKey, Utility.DEFAULT_LATLONG);
+
+        String metric = context.getString(R.string.pref_units_metric);
+        isMetric = prefs.getString(context.getString(R.string.pref_units_key), metric)
+                .equals(metric);
+
+        String sunshineArtPack = context.getString(R.string.pref_art_pack_sunshine);
+        String formatArtUrl = prefs.getString(context.getString(R.string.pref_art_pack_key),
+                sunshineArtPack);
+        usingLocalGraphics = formatArtUrl.equals(sunshineArtPack);
+        for (int art = 0; art < mArtUrls.length; art++) {
+            mArtUrls[art] = String.format(Locale.US, formatArtUrl, WeatherConditions.getArtName(art));
+        }
+    }
+
+    /**
+     * @param weatherId from OpenWeatherMap API response
+     * @return url for the corresponding weather artwork. null if no relation is found.
+     */
+    public String getArtUrl(int weatherId) {
+        int art = WeatherConditions.getArt(weatherId);
+        return art == WeatherConditions.ART_NONE ? null : mArtUrls[art];
+    }
+
+    /**
+     * @param art a kind of art of WeatherConditions
+     * @return url for the kind of artwork in the art pack.
+     */
+    public String getArtUrlForArt(int art) {
+        return mArtUrls[art];
+    }
+}
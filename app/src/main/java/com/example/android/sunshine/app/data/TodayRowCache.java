@@ -0,0 +1,214 @@
+package com.example.android.sunshine.app.data;
+
+import android.database.Cursor;
+import android.database.MatrixCursor;
+
+import com.example.android.sunshine.app.data.WeatherContract.LocationEntry;
+import com.example.android.sunshine.app.data.WeatherContract.WeatherEntry;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Keeps today's weather row of each location setting in memory, so that the notification, the
+ * widgets, Muzei, the wearables and the detail screen, which all ask for it after every sync,
+ * don't each run the same join.
+ *
+ * A row is kept with every column of the join, and any projection made of these columns is
+ * served from it as a MatrixCursor.  Writes invalidate the rows of the locations they touched
+ * once they have been committed, and the cache is held off from the beginning of a write until
+ * then: no row is served, since the database may have committed data it doesn't reflect yet,
+ * and no row is stored.  A row read before that can't be stored afterwards either: each write
+ * and invalidation starts a new generation, and a row is only stored if none happened since it
+ * started being read.
+ */
+class TodayRowCache {
+
+    // The columns of a cached row, as they are queried.
+    static final String[] ROW_PROJECTION = {
+            WeatherEntry.TABLE_NAME + "." + WeatherEntry._ID,
+            WeatherEntry.COLUMN_LOC_KEY,
+            WeatherEntry.COLUMN_DATE,
+            WeatherEntry.COLUMN_SHORT_DESC,
+            WeatherEntry.COLUMN_WEATHER_ID,
+            WeatherEntry.COLUMN_MIN_TEMP,
+            WeatherEntry.COLUMN_MAX_TEMP,
+            WeatherEntry.COLUMN_HUMIDITY,
+            WeatherEntry.COLUMN_PRESSURE,
+            WeatherEntry.COLUMN_WIND_SPEED,
+            WeatherEntry.COLUMN_DEGREES,
+            LocationEntry.COLUMN_LOCATION_SETTING,
+            LocationEntry.COLUMN_CITY_NAME,
+            LocationEntry.COLUMN_COORD_LAT,
+            LocationEntry.COLUMN_COORD_LONG
+    };
+
+    // these indices must match the projection
+    private static final int INDEX_ID = 0;
+    private static final int INDEX_LOC_KEY = 1;
+    private static final int INDEX_DATE = 2;
+    private static final int INDEX_SHORT_DESC = 3;
+    private static final int INDEX_WEATHER_ID = 4;
+    private static final int INDEX_LOCATION_SETTING = 11;
+    private static final int INDEX_CITY_NAME = 12;
+
+    // The names a projection can use for each column of a cached row.
+    private static final Map<String, Integer> sColumnIndices = new HashMap<String, Integer>();
+
+    static {
+        for (int i = 0; i < ROW_PROJECTION.length; i++) {
+            String column = ROW_PROJECTION[i];
+            String table = i < INDEX_LOCATION_SETTING ? WeatherEntry.TABLE_NAME : LocationEntry.TABLE_NAME;
+            sColumnIndices.put(column, i);
+            // the weather _id is already qualified, since a bare _id is ambiguous in the join
+            if (i != INDEX_ID) {
+                sColumnIndices.put(table + "." + column, i);
+            }
+        }
+        sColumnIndices.put(LocationEntry.TABLE_NAME + "." + LocationEntry._ID, INDEX_LOC_KEY);
+    }
+
+    private static class Entry {
+        final long date;
+        final Object[] values;
+
+        Entry(long date, Object[] values) {
+            this.date = date;
+            this.values = values;
+        }
+    }
+
+    private final Map<String, Entry> mEntries = new HashMap<String, Entry>();
+    private long mGeneration;
+    // The writes in progress
+    private int mWriteCount;
+
+    private final AtomicLong mHitCount = new AtomicLong();
+    private final AtomicLong mMissCount = new AtomicLong();
+
+    /**
+     * @return the index of each column of the projection in a cached row, or null if the
+     * projection can't be served from the cache.
+     */
+    static int[] getColumnIndices(String[] projection) {
+        if (projection == null) {
+            return null;
+        }
+        int[] indices = new int[projection.length];
+        for (int i = 0; i < projection.length; i++) {
+            Integer index = sColumnIndices.get(projection[i]);
+            if (index == null) {
+                return null;
+            }
+            indices[i] = index;
+        }
+        return indices;
+    }
+
+    /**
+     * @return the cached row of the location for this date, or null if there's none.
+     */
+    synchronized Object[] get(String locationSetting, long date) {
+        Entry entry = mEntries.get(locationSetting);
+        if (mWriteCount > 0 || entry == null || entry.date != date) {
+            mMissCount.incrementAndGet();
+            return null;
+        }
+        mHitCount.incrementAndGet();
+        return entry.values;
+    }
+
+    /**
+     * @return the generation to give back to {@link #put} once the row has been read.
+     */
+    synchronized long getGeneration() {
+        return mGeneration;
+    }
+
+    /**
+     * Stores the row of a location, unless it has been invalidated since it started being read.
+     */
+    synchronized void put(String locationSetting, long date, Object[] values, long generation) {
+        if (generation == mGeneration && mWriteCount == 0) {
+            mEntries.put(locationSetting, new Entry(date, values));
+        }
+    }
+
+    /**
+     * Holds the cache off until {@link #endWrite}, called once the write is committed or rolled
+     * back, and its rows invalidated.
+     */
+    synchronized void beginWrite() {
+        mWriteCount++;
+        mGeneration++;
+    }
+
+    synchronized void endWrite() {
+        mWriteCount--;
+        mGeneration++;
+    }
+
+    synchronized void invalidate(String locationSetting) {
+        mGeneration++;
+        mEntries.remove(locationSetting);
+    }
+
+    synchronized void invalidateAll() {
+        mGeneration++;
+        mEntries.clear();
+    }
+
+    long getHitCount() {
+        return mHitCount.get();
+    }
+
+    long getMissCount() {
+        return mMissCount.get();
+    }
+
+    /**
+     * Reads the current row of a cursor queried with {@link #ROW_PROJECTION}.
+     */
+    static Object[] readRow(Cursor cursor) {
+        Object[] values = new Object[ROW_PROJECTION.length];
+        for (int i = 0; i < ROW_PROJECTION.length; i++) {
+            switch (i) {
+                case INDEX_ID:
+                case INDEX_LOC_KEY:
+                case INDEX_DATE:
+                case INDEX_WEATHER_ID:
+                    values[i] = cursor.getLong(i);
+                    break;
+                case INDEX_SHORT_DESC:
+                case INDEX_LOCATION_SETTING:
+                case INDEX_CITY_NAME:
+                    values[i] = cursor.getString(i);
+                    break;
+                default:
+                    values[i] = cursor.getDouble(i);
+            }
+        }
+        return values;
+    }
+
+    /**
+     * @param values a cached row, or null for a cursor without any row.
+     * @return a cursor with the columns of the projection, named the way SQLite names them.
+     */
+    static Cursor buildCursor(String[] projection, int[] columnIndices, Object[] values) {
+        String[] columnNames = new String[projection.length];
+        for (int i = 0; i < projection.length; i++) {
+            columnNames[i] = projection[i].substring(projection[i].lastIndexOf('.') + 1);
+        }
+        MatrixCursor cursor = new MatrixCursor(columnNames, values == null ? 0 : 1);
+        if (values != null) {
+            Object[] row = new Object[projection.length];
+            for (int i = 0; i < projection.length; i++) {
+                row[i] = values[columnIndices[i]];
+            }
+            cursor.addRow(row);
+        }
+        return cursor;
+    }
+}
@@ -15,9 +15,12 @@
  */
 package com.example.android.sunshine.app.data;
 
+import android.annotation.TargetApi;
 import android.content.Context;
+import android.database.Cursor;
 import android.database.sqlite.SQLiteDatabase;
 import android.database.sqlite.SQLiteOpenHelper;
+import android.os.Build;
 
 import com.example.android.sunshine.app.data.WeatherContract.LocationEntry;
 import com.example.android.sunshine.app.data.WeatherContract.WeatherEntry;
@@ -32,8 +35,57 @@ public class WeatherDbHelper extends SQLiteOpenHelper {
 
     static final String DATABASE_NAME = "weather.db";
 
+    // Checkpoint policy of the write-ahead log.  A sync only writes a few pages, so the log is
+    // copied back into the database once it holds about a hundred syncs, and it is then
+    // truncated instead of being left at its largest size.
+    static final int WAL_AUTOCHECKPOINT_PAGES = 256;
+    static final long WAL_JOURNAL_SIZE_LIMIT_BYTES = 256 * 1024;
+
     public WeatherDbHelper(Context context) {
         super(context, DATABASE_NAME, null, DATABASE_VERSION);
+        // With write-ahead logging, the widgets, Muzei, the wearables and the loaders can keep
+        // reading the last committed data from their own connections while a sync is writing,
+        // instead of waiting behind the rollback journal's lock.
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.JELLY_BEAN) {
+            setWriteAheadLoggingEnabled(true);
+        }
+    }
+
+    @Override
+    @TargetApi(Build.VERSION_CODES.JELLY_BEAN)
+    public void onConfigure(SQLiteDatabase db) {
+        super.onConfigure(db);
+        configureWriteAheadLog(db);
+    }
+
+    @Override
+    public void onOpen(SQLiteDatabase db) {
+        super.onOpen(db);
+        // onConfigure and setWriteAheadLoggingEnabled are only available from Jelly Bean, but the
+        // database itself supports write-ahead logging from Honeycomb.
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.HONEYCOMB
+                && Build.VERSION.SDK_INT < Build.VERSION_CODES.JELLY_BEAN
+                && !db.isReadOnly()) {
+            db.enableWriteAheadLogging();
+            configureWriteAheadLog(db);
+        }
+    }
+
+    /**
+     * Sets the checkpoint policy of the write-ahead log.  Committing to the log only needs to be
+     * synced to disk on checkpoints, which is still safe since the log survives a crash.
+     */
+    private static void configureWriteAheadLog(SQLiteDatabase db) {
+        setPragma(db, "wal_autocheckpoint", WAL_AUTOCHECKPOINT_PAGES);
+        setPragma(db, "journal_size_limit", WAL_JOURNAL_SIZE_LIMIT_BYTES);
+        db.execSQL("PRAGMA synchronous = NORMAL");
+    }
+
+    // These pragmas return their new value, so they must be run as queries.
+    private static void setPragma(SQLiteDatabase db, String pragma, long value) {
+        Cursor cursor = db.rawQuery("PRAGMA " + pragma + " = " + value, null);
+        cursor.moveToFirst();
+        cursor.close();
     }
 
     @Override
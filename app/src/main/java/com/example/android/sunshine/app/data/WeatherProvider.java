@@ -17,38 +17,92 @@ package com.example.android.sunshine.app.data;
 
 import android.annotation.TargetApi;
 import android.content.ContentProvider;
+import android.content.ContentProviderOperation;
+import android.content.ContentProviderResult;
 import android.content.ContentValues;
+import android.content.OperationApplicationException;
 import android.content.UriMatcher;
 import android.database.Cursor;
+import android.database.DatabaseUtils;
+import android.database.SQLException;
 import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteDoneException;
 import android.database.sqlite.SQLiteQueryBuilder;
+import android.database.sqlite.SQLiteStatement;
 import android.net.Uri;
+import android.os.Build;
+import android.support.v4.util.LongSparseArray;
+import android.support.v4.util.LruCache;
+import android.text.TextUtils;
+import android.util.Log;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashSet;
+import java.util.Set;
 
 public class WeatherProvider extends ContentProvider {
+    private static final String LOG_TAG = WeatherProvider.class.getSimpleName();
 
     // The URI Matcher used by this content provider.
     private static final UriMatcher sUriMatcher = buildUriMatcher();
     private WeatherDbHelper mOpenHelper;
 
+    // The batch being applied on the current thread, if any.
+    private final ThreadLocal<Batch> mBatch = new ThreadLocal<Batch>();
+
+    // The SQL of the queries, per uri type, projection, selection and sort order, so that it is
+    // only built once.  Since the database keeps the statements it compiled for a given SQL,
+    // reusing the very same string also spares it from parsing them again.
+    private static final int QUERY_SQL_CACHE_SIZE = 32;
+    private final LruCache<QueryKey, String> mQuerySqlCache =
+            new LruCache<QueryKey, String>(QUERY_SQL_CACHE_SIZE);
+
+    // Today's row of each location, the most frequent query after every sync.
+    private final TodayRowCache mTodayRowCache = new TodayRowCache();
+
     static final int WEATHER = 100;
     static final int WEATHER_WITH_LOCATION = 101;
     static final int WEATHER_WITH_LOCATION_AND_DATE = 102;
     static final int LOCATION = 300;
 
-    private static final SQLiteQueryBuilder sWeatherByLocationSettingQueryBuilder;
+    //This is an inner join which looks like
+    //weather INNER JOIN location ON weather.location_id = location._id
+    private static final String sWeatherByLocationSettingTables =
+            WeatherContract.WeatherEntry.TABLE_NAME + " INNER JOIN " +
+                    WeatherContract.LocationEntry.TABLE_NAME +
+                    " ON " + WeatherContract.WeatherEntry.TABLE_NAME +
+                    "." + WeatherContract.WeatherEntry.COLUMN_LOC_KEY +
+                    " = " + WeatherContract.LocationEntry.TABLE_NAME +
+                    "." + WeatherContract.LocationEntry._ID;
+
+    // The columns bound by the compiled weather insert, in order.
+    private static final String[] sWeatherInsertColumns = {
+            WeatherContract.WeatherEntry.COLUMN_LOC_KEY,
+            WeatherContract.WeatherEntry.COLUMN_DATE,
+            WeatherContract.WeatherEntry.COLUMN_SHORT_DESC,
+            WeatherContract.WeatherEntry.COLUMN_WEATHER_ID,
+            WeatherContract.WeatherEntry.COLUMN_MIN_TEMP,
+            WeatherContract.WeatherEntry.COLUMN_MAX_TEMP,
+            WeatherContract.WeatherEntry.COLUMN_HUMIDITY,
+            WeatherContract.WeatherEntry.COLUMN_PRESSURE,
+            WeatherContract.WeatherEntry.COLUMN_WIND_SPEED,
+            WeatherContract.WeatherEntry.COLUMN_DEGREES
+    };
+
+    //INSERT INTO weather (location_id, date, ...) VALUES (?, ?, ...)
+    private static final String sWeatherInsertSql;
 
     static{
-        sWeatherByLocationSettingQueryBuilder = new SQLiteQueryBuilder();
-        
-        //This is an inner join which looks like
-        //weather INNER JOIN location ON weather.location_id = location._id
-        sWeatherByLocationSettingQueryBuilder.setTables(
-                WeatherContract.WeatherEntry.TABLE_NAME + " INNER JOIN " +
-                        WeatherContract.LocationEntry.TABLE_NAME +
-                        " ON " + WeatherContract.WeatherEntry.TABLE_NAME +
-                        "." + WeatherContract.WeatherEntry.COLUMN_LOC_KEY +
-                        " = " + WeatherContract.LocationEntry.TABLE_NAME +
-                        "." + WeatherContract.LocationEntry._ID);
+        StringBuilder sql = new StringBuilder("INSERT INTO ")
+                .append(WeatherContract.WeatherEntry.TABLE_NAME)
+                .append(" (")
+                .append(TextUtils.join(", ", sWeatherInsertColumns))
+                .append(") VALUES (");
+        for (int i = 0; i < sWeatherInsertColumns.length; i++) {
+            sql.append(i == 0 ? "?" : ", ?");
+        }
+        sWeatherInsertSql = sql.append(")").toString();
     }
 
     //location.location_setting = ?
@@ -83,12 +137,10 @@ public class WeatherProvider extends ContentProvider {
             selection = sLocationSettingWithStartDateSelection;
         }
 
-        return sWeatherByLocationSettingQueryBuilder.query(mOpenHelper.getReadableDatabase(),
+        return query(WEATHER_WITH_LOCATION, sWeatherByLocationSettingTables,
                 projection,
                 selection,
                 selectionArgs,
-                null,
-                null,
                 sortOrder
         );
     }
@@ -97,15 +149,62 @@ public class WeatherProvider extends ContentProvider {
             Uri uri, String[] projection, String sortOrder) {
         String locationSetting = WeatherContract.WeatherEntry.getLocationSettingFromUri(uri);
         long date = WeatherContract.WeatherEntry.getDateFromUri(uri);
+        String[] selectionArgs = new String[]{locationSetting, Long.toString(date)};
+
+        // Today's row is served from memory, as long as the projection only has its columns.
+        int[] columnIndices = TodayRowCache.getColumnIndices(projection);
+        if (columnIndices == null
+                || date != WeatherContract.normalizeDate(System.currentTimeMillis())) {
+            return query(WEATHER_WITH_LOCATION_AND_DATE, sWeatherByLocationSettingTables,
+                    projection,
+                    sLocationSettingAndDaySelection,
+                    selectionArgs,
+                    sortOrder
+            );
+        }
 
-        return sWeatherByLocationSettingQueryBuilder.query(mOpenHelper.getReadableDatabase(),
-                projection,
-                sLocationSettingAndDaySelection,
-                new String[]{locationSetting, Long.toString(date)},
-                null,
-                null,
-                sortOrder
-        );
+        Object[] row = mTodayRowCache.get(locationSetting, date);
+        if (row == null) {
+            long generation = mTodayRowCache.getGeneration();
+            Cursor cursor = query(WEATHER_WITH_LOCATION_AND_DATE, sWeatherByLocationSettingTables,
+                    TodayRowCache.ROW_PROJECTION,
+                    sLocationSettingAndDaySelection,
+                    selectionArgs,
+                    null
+            );
+            try {
+                if (cursor.moveToFirst()) {
+                    row = TodayRowCache.readRow(cursor);
+                    mTodayRowCache.put(locationSetting, date, row, generation);
+                }
+            } finally {
+                cursor.close();
+            }
+        }
+        return TodayRowCache.buildCursor(projection, columnIndices, row);
+    }
+
+    /**
+     * @return the cache of today's rows, whose hit and miss counts tell how well it works.
+     */
+    TodayRowCache getTodayRowCache() {
+        return mTodayRowCache;
+    }
+
+    /**
+     * Queries the database with the SQL cached for this uri type, projection, selection and
+     * sort order, building it on the first call only.
+     */
+    private Cursor query(int match, String tables, String[] projection, String selection,
+                         String[] selectionArgs, String sortOrder) {
+        QueryKey key = new QueryKey(match, projection, selection, sortOrder);
+        String sql = mQuerySqlCache.get(key);
+        if (sql == null) {
+            sql = SQLiteQueryBuilder.buildQueryString(false, tables, projection, selection,
+                    null, null, sortOrder, null);
+            mQuerySqlCache.put(key, sql);
+        }
+        return mOpenHelper.getReadableDatabase().rawQuery(sql, selectionArgs);
     }
 
     /*
@@ -202,13 +301,10 @@ public class WeatherProvider extends ContentProvider {
             }
             // "location"
             case LOCATION: {
-                retCursor = mOpenHelper.getReadableDatabase().query(
-                        WeatherContract.LocationEntry.TABLE_NAME,
+                retCursor = query(LOCATION, WeatherContract.LocationEntry.TABLE_NAME,
                         projection,
                         selection,
                         selectionArgs,
-                        null,
-                        null,
                         sortOrder
                 );
                 break;
@@ -228,57 +324,212 @@ public class WeatherProvider extends ContentProvider {
     public Uri insert(Uri uri, ContentValues values) {
         final SQLiteDatabase db = mOpenHelper.getWritableDatabase();
         final int match = sUriMatcher.match(uri);
-        Uri returnUri;
-
-        switch (match) {
-            case WEATHER: {
-                normalizeDate(values);
-                long _id = db.insert(WeatherContract.WeatherEntry.TABLE_NAME, null, values);
-                if ( _id > 0 )
-                    returnUri = WeatherContract.WeatherEntry.buildWeatherUri(_id);
-                else
-                    throw new android.database.SQLException("Failed to insert row into " + uri);
-                break;
-            }
-            case LOCATION: {
-                long _id = db.insert(WeatherContract.LocationEntry.TABLE_NAME, null, values);
-                if ( _id > 0 )
-                    returnUri = WeatherContract.LocationEntry.buildLocationUri(_id);
-                else
-                    throw new android.database.SQLException("Failed to insert row into " + uri);
-                break;
+        final Changes changes = beginChanges();
+        boolean committed = false;
+        try {
+            Uri returnUri;
+
+            switch (match) {
+                case WEATHER: {
+                    normalizeDate(values);
+                    Batch batch = mBatch.get();
+                    long _id = batch != null
+                            ? insertWeather(db, batch.getWeatherInsert(db), values)
+                            : db.insert(WeatherContract.WeatherEntry.TABLE_NAME, null, values);
+                    if ( _id > 0 )
+                        returnUri = WeatherContract.WeatherEntry.buildWeatherUri(_id);
+                    else
+                        throw new android.database.SQLException("Failed to insert row into " + uri);
+                    changes.addWeatherRow(db, values);
+                    break;
+                }
+                case LOCATION: {
+                    long _id = upsertLocation(db, values);
+                    if ( _id > 0 )
+                        returnUri = WeatherContract.LocationEntry.buildLocationUri(_id);
+                    else
+                        throw new android.database.SQLException("Failed to insert row into " + uri);
+                    changes.uris.add(uri);
+                    break;
+                }
+                default:
+                    throw new UnsupportedOperationException("Unknown uri: " + uri);
             }
-            default:
-                throw new UnsupportedOperationException("Unknown uri: " + uri);
+            committed = true;
+            return returnUri;
+        } finally {
+            endChanges(changes, committed);
         }
-        getContext().getContentResolver().notifyChange(uri, null);
-        return returnUri;
     }
 
     @Override
     public int delete(Uri uri, String selection, String[] selectionArgs) {
         final SQLiteDatabase db = mOpenHelper.getWritableDatabase();
         final int match = sUriMatcher.match(uri);
-        int rowsDeleted;
-        // this makes delete all rows return the number of rows deleted
-        if ( null == selection ) selection = "1";
-        switch (match) {
-            case WEATHER:
-                rowsDeleted = db.delete(
-                        WeatherContract.WeatherEntry.TABLE_NAME, selection, selectionArgs);
-                break;
-            case LOCATION:
-                rowsDeleted = db.delete(
-                        WeatherContract.LocationEntry.TABLE_NAME, selection, selectionArgs);
-                break;
-            default:
-                throw new UnsupportedOperationException("Unknown uri: " + uri);
+        final Changes changes = beginChanges();
+        boolean committed = false;
+        try {
+            int rowsDeleted;
+            // this makes delete all rows return the number of rows deleted
+            if ( null == selection ) selection = "1";
+            switch (match) {
+                case WEATHER:
+                    // The rows are looked up in the same transaction as their deletion, so that
+                    // exactly the ones deleted are notified.
+                    beginTransaction(db);
+                    try {
+                        changes.addWeatherRows(db, selection, selectionArgs);
+                        rowsDeleted = db.delete(
+                                WeatherContract.WeatherEntry.TABLE_NAME, selection, selectionArgs);
+                        db.setTransactionSuccessful();
+                    } finally {
+                        db.endTransaction();
+                    }
+                    break;
+                case LOCATION:
+                    rowsDeleted = db.delete(
+                            WeatherContract.LocationEntry.TABLE_NAME, selection, selectionArgs);
+                    // Because a null deletes all rows
+                    if (rowsDeleted != 0) {
+                        changes.uris.add(uri);
+                    }
+                    break;
+                default:
+                    throw new UnsupportedOperationException("Unknown uri: " + uri);
+            }
+            committed = true;
+            return rowsDeleted;
+        } finally {
+            endChanges(changes, committed);
         }
-        // Because a null deletes all rows
-        if (rowsDeleted != 0) {
-            getContext().getContentResolver().notifyChange(uri, null);
+    }
+
+    /**
+     * Inserts a location, or updates the existing row of its location setting, so that the
+     * location id stays the same and the weather rows referencing it are kept.
+     *
+     * @return the row ID of the location, -1 if it couldn't be written.
+     */
+    private long upsertLocation(SQLiteDatabase db, ContentValues values) {
+        String locationSetting =
+                values.getAsString(WeatherContract.LocationEntry.COLUMN_LOCATION_SETTING);
+        if (locationSetting != null) {
+            Cursor cursor = db.query(WeatherContract.LocationEntry.TABLE_NAME,
+                    new String[]{WeatherContract.LocationEntry._ID},
+                    WeatherContract.LocationEntry.COLUMN_LOCATION_SETTING + " = ?",
+                    new String[]{locationSetting},
+                    null,
+                    null,
+                    null);
+            try {
+                if (cursor.moveToFirst()) {
+                    long _id = cursor.getLong(0);
+                    db.update(WeatherContract.LocationEntry.TABLE_NAME, values,
+                            WeatherContract.LocationEntry._ID + " = ?",
+                            new String[]{Long.toString(_id)});
+                    return _id;
+                }
+            } finally {
+                cursor.close();
+            }
+        }
+        return db.insert(WeatherContract.LocationEntry.TABLE_NAME, null, values);
+    }
+
+    /**
+     * Inserts a weather row with a compiled statement, binding its values directly instead of
+     * building and parsing the SQL again.  Rows that don't have exactly the expected columns go
+     * through SQLiteDatabase.insert.
+     *
+     * @return the row ID of the weather row, -1 if it couldn't be inserted.
+     */
+    private static long insertWeather(SQLiteDatabase db, SQLiteStatement statement,
+                                      ContentValues values) {
+        if (values.size() != sWeatherInsertColumns.length) {
+            return db.insert(WeatherContract.WeatherEntry.TABLE_NAME, null, values);
+        }
+
+        statement.clearBindings();
+        for (int i = 0; i < sWeatherInsertColumns.length; i++) {
+            Object value = values.get(sWeatherInsertColumns[i]);
+            if (value instanceof String) {
+                statement.bindString(i + 1, (String) value);
+            } else if (value instanceof Double || value instanceof Float) {
+                statement.bindDouble(i + 1, ((Number) value).doubleValue());
+            } else if (value instanceof Number) {
+                statement.bindLong(i + 1, ((Number) value).longValue());
+            } else {
+                return db.insert(WeatherContract.WeatherEntry.TABLE_NAME, null, values);
+            }
+        }
+        // Like SQLiteDatabase.insert, report a failed insert rather than throw.
+        try {
+            return statement.executeInsert();
+        } catch (SQLException e) {
+            Log.e(LOG_TAG, "Error inserting " + values, e);
+            return -1;
+        }
+    }
+
+    /**
+     * Begins a transaction which doesn't lock the readers out.  With write-ahead logging, they
+     * keep reading the last committed data from the other connections of the pool meanwhile.
+     */
+    @TargetApi(Build.VERSION_CODES.HONEYCOMB)
+    private static void beginTransaction(SQLiteDatabase db) {
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.HONEYCOMB) {
+            db.beginTransactionNonExclusive();
+        } else {
+            db.beginTransaction();
+        }
+    }
+
+    /**
+     * @return where to record the rows changed by an operation: the changes of the batch being
+     * applied on this thread, if any, so that they are only notified once it is committed.
+     * Otherwise, the cache of today's rows is held off until the operation ends.
+     */
+    private Changes beginChanges() {
+        Batch batch = mBatch.get();
+        if (batch != null) {
+            return batch.changes;
+        }
+        mTodayRowCache.beginWrite();
+        return new Changes();
+    }
+
+    /**
+     * Ends the write of an operation, unless it is part of a batch.
+     */
+    private void endChanges(Changes changes, boolean committed) {
+        if (mBatch.get() == null) {
+            endWrite(changes, committed);
+        }
+    }
+
+    /**
+     * Drops the cached rows the changes made stale, before the cache of today's rows serves
+     * anything again, then notifies the changes if they were committed, so that the observers
+     * querying again get the new data.
+     */
+    private void endWrite(Changes changes, boolean committed) {
+        try {
+            for (Uri uri : changes.uris) {
+                if (sUriMatcher.match(uri) == WEATHER_WITH_LOCATION_AND_DATE) {
+                    mTodayRowCache.invalidate(
+                            WeatherContract.WeatherEntry.getLocationSettingFromUri(uri));
+                } else {
+                    mTodayRowCache.invalidateAll();
+                }
+            }
+        } finally {
+            mTodayRowCache.endWrite();
+        }
+        if (committed) {
+            for (Uri uri : changes.uris) {
+                getContext().getContentResolver().notifyChange(uri, null);
+            }
         }
-        return rowsDeleted;
     }
 
     private void normalizeDate(ContentValues values) {
@@ -294,25 +545,46 @@ public class WeatherProvider extends ContentProvider {
             Uri uri, ContentValues values, String selection, String[] selectionArgs) {
         final SQLiteDatabase db = mOpenHelper.getWritableDatabase();
         final int match = sUriMatcher.match(uri);
-        int rowsUpdated;
-
-        switch (match) {
-            case WEATHER:
-                normalizeDate(values);
-                rowsUpdated = db.update(WeatherContract.WeatherEntry.TABLE_NAME, values, selection,
-                        selectionArgs);
-                break;
-            case LOCATION:
-                rowsUpdated = db.update(WeatherContract.LocationEntry.TABLE_NAME, values, selection,
-                        selectionArgs);
-                break;
-            default:
-                throw new UnsupportedOperationException("Unknown uri: " + uri);
-        }
-        if (rowsUpdated != 0) {
-            getContext().getContentResolver().notifyChange(uri, null);
+        final Changes changes = beginChanges();
+        boolean committed = false;
+        try {
+            int rowsUpdated;
+
+            switch (match) {
+                case WEATHER:
+                    normalizeDate(values);
+                    beginTransaction(db);
+                    try {
+                        changes.addWeatherRows(db, selection, selectionArgs);
+                        rowsUpdated = db.update(WeatherContract.WeatherEntry.TABLE_NAME, values,
+                                selection, selectionArgs);
+                        db.setTransactionSuccessful();
+                    } finally {
+                        db.endTransaction();
+                    }
+                    // Rows moved to another location or date can't be told apart from the others
+                    // anymore, so everybody needs to know.
+                    if (rowsUpdated != 0
+                            && (values.containsKey(WeatherContract.WeatherEntry.COLUMN_LOC_KEY)
+                            || values.containsKey(WeatherContract.WeatherEntry.COLUMN_DATE))) {
+                        changes.uris.add(uri);
+                    }
+                    break;
+                case LOCATION:
+                    rowsUpdated = db.update(WeatherContract.LocationEntry.TABLE_NAME, values,
+                            selection, selectionArgs);
+                    if (rowsUpdated != 0) {
+                        changes.uris.add(uri);
+                    }
+                    break;
+                default:
+                    throw new UnsupportedOperationException("Unknown uri: " + uri);
+            }
+            committed = true;
+            return rowsUpdated;
+        } finally {
+            endChanges(changes, committed);
         }
-        return rowsUpdated;
     }
 
     @Override
@@ -321,27 +593,200 @@ public class WeatherProvider extends ContentProvider {
         final int match = sUriMatcher.match(uri);
         switch (match) {
             case WEATHER:
-                db.beginTransaction();
+                // compiled first, so that a failure can't leave the transaction open
+                SQLiteStatement weatherInsert = db.compileStatement(sWeatherInsertSql);
+                final Changes changes = beginChanges();
+                boolean committed = false;
+                beginTransaction(db);
                 int returnCount = 0;
                 try {
                     for (ContentValues value : values) {
                         normalizeDate(value);
-                        long _id = db.insert(WeatherContract.WeatherEntry.TABLE_NAME, null, value);
+                        long _id = insertWeather(db, weatherInsert, value);
                         if (_id != -1) {
                             returnCount++;
+                            changes.addWeatherRow(db, value);
                         }
                     }
                     db.setTransactionSuccessful();
+                    committed = true;
                 } finally {
+                    weatherInsert.close();
                     db.endTransaction();
+                    endChanges(changes, committed);
                 }
-                getContext().getContentResolver().notifyChange(uri, null);
                 return returnCount;
             default:
                 return super.bulkInsert(uri, values);
         }
     }
 
+    /**
+     * Applies all the operations in a single transaction: either they are all committed or none
+     * of them is.  Observers are notified after the commit, instead of once per operation.
+     */
+    @Override
+    public ContentProviderResult[] applyBatch(ArrayList<ContentProviderOperation> operations)
+            throws OperationApplicationException {
+        final SQLiteDatabase db = mOpenHelper.getWritableDatabase();
+        final Batch batch = new Batch();
+        ContentProviderResult[] results;
+
+        boolean committed = false;
+
+        mBatch.set(batch);
+        mTodayRowCache.beginWrite();
+        beginTransaction(db);
+        try {
+            results = super.applyBatch(operations);
+            db.setTransactionSuccessful();
+            committed = true;
+        } catch (SQLException e) {
+            // A row the database rejected, e.g. an incomplete forecast: the batch is rolled back.
+            throw new OperationApplicationException("Error applying the batch", e);
+        } finally {
+            batch.close();
+            db.endTransaction();
+            mBatch.remove();
+            // Each row is notified once for the whole batch, however many operations touched it.
+            endWrite(batch.changes, committed);
+        }
+        return results;
+    }
+
+    /**
+     * The uris to notify for the rows changed by an operation or a batch.  A weather row is
+     * notified as weather/<location>/<date>, so that only the observers of its location, or of
+     * its very day, are woken up.
+     */
+    private static class Changes {
+        final Set<Uri> uris = new LinkedHashSet<Uri>();
+        // The location settings of the location ids met so far.
+        private final LongSparseArray<String> mLocationSettings = new LongSparseArray<String>();
+
+        /**
+         * Records a weather row about to be, or just, written.
+         */
+        void addWeatherRow(SQLiteDatabase db, ContentValues values) {
+            Long locationId = values.getAsLong(WeatherContract.WeatherEntry.COLUMN_LOC_KEY);
+            Long date = values.getAsLong(WeatherContract.WeatherEntry.COLUMN_DATE);
+            if (locationId == null || date == null) {
+                uris.add(WeatherContract.WeatherEntry.CONTENT_URI);
+                return;
+            }
+            addWeatherRow(db, locationId, date);
+        }
+
+        /**
+         * Records the weather rows matching a selection, before they are updated or deleted.
+         */
+        void addWeatherRows(SQLiteDatabase db, String selection, String[] selectionArgs) {
+            Cursor cursor = db.query(WeatherContract.WeatherEntry.TABLE_NAME,
+                    new String[]{WeatherContract.WeatherEntry.COLUMN_LOC_KEY,
+                            WeatherContract.WeatherEntry.COLUMN_DATE},
+                    selection,
+                    selectionArgs,
+                    null,
+                    null,
+                    null);
+            try {
+                while (cursor.moveToNext()) {
+                    addWeatherRow(db, cursor.getLong(0), cursor.getLong(1));
+                }
+            } finally {
+                cursor.close();
+            }
+        }
+
+        private void addWeatherRow(SQLiteDatabase db, long locationId, long date) {
+            String locationSetting = mLocationSettings.get(locationId);
+            if (locationSetting == null) {
+                try {
+                    locationSetting = DatabaseUtils.stringForQuery(db,
+                            "SELECT " + WeatherContract.LocationEntry.COLUMN_LOCATION_SETTING
+                                    + " FROM " + WeatherContract.LocationEntry.TABLE_NAME
+                                    + " WHERE " + WeatherContract.LocationEntry._ID + " = ?",
+                            new String[]{Long.toString(locationId)});
+                } catch (SQLiteDoneException e) {
+                    // No such location: nobody can be watching it by its setting.
+                    uris.add(WeatherContract.WeatherEntry.CONTENT_URI);
+                    return;
+                }
+                mLocationSettings.put(locationId, locationSetting);
+            }
+            uris.add(WeatherContract.WeatherEntry.buildWeatherLocationWithDate(locationSetting, date));
+        }
+    }
+
+    /**
+     * What the SQL of a query is built from.  The projections, selections and sort orders are
+     * mostly the constants of the callers, which are compared by reference first, so looking the
+     * SQL up doesn't build a string out of them.
+     */
+    private static class QueryKey {
+        private final int mMatch;
+        private final String[] mProjection;
+        private final String mSelection;
+        private final String mSortOrder;
+        private final int mHashCode;
+
+        QueryKey(int match, String[] projection, String selection, String sortOrder) {
+            mMatch = match;
+            mProjection = projection;
+            mSelection = selection;
+            mSortOrder = sortOrder;
+            int hashCode = match;
+            hashCode = 31 * hashCode + Arrays.hashCode(projection);
+            hashCode = 31 * hashCode + (selection == null ? 0 : selection.hashCode());
+            hashCode = 31 * hashCode + (sortOrder == null ? 0 : sortOrder.hashCode());
+            mHashCode = hashCode;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof QueryKey)) {
+                return false;
+            }
+            QueryKey other = (QueryKey) o;
+            return mMatch == other.mMatch
+                    && mHashCode == other.mHashCode
+                    && Arrays.equals(mProjection, other.mProjection)
+                    && TextUtils.equals(mSelection, other.mSelection)
+                    && TextUtils.equals(mSortOrder, other.mSortOrder);
+        }
+
+        @Override
+        public int hashCode() {
+            return mHashCode;
+        }
+    }
+
+    /**
+     * What a batch keeps while it is being applied: the rows it changed, which are only notified
+     * once it has been committed, and the statements compiled for its operations.  Statements are
+     * not shared between threads, so each batch compiles its own.
+     */
+    private static class Batch {
+        final Changes changes = new Changes();
+        private SQLiteStatement mWeatherInsert;
+
+        SQLiteStatement getWeatherInsert(SQLiteDatabase db) {
+            if (mWeatherInsert == null) {
+                mWeatherInsert = db.compileStatement(sWeatherInsertSql);
+            }
+            return mWeatherInsert;
+        }
+
+        void close() {
+            if (mWeatherInsert != null) {
+                mWeatherInsert.close();
+            }
+        }
+    }
+
     // You do not need to call this method. This is a method specifically to assist the testing
     // framework in running smoothly. You can read more at:
     // http://developer.android.com/reference/android/content/ContentProvider.html#shutdown()
@@ -0,0 +1,177 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app.muzei;
+
+import android.content.ContentProvider;
+import android.content.ContentValues;
+import android.content.Context;
+import android.database.Cursor;
+import android.graphics.Bitmap;
+import android.net.Uri;
+import android.os.ParcelFileDescriptor;
+import android.util.DisplayMetrics;
+import android.util.Log;
+
+import com.bumptech.glide.Glide;
+import com.example.android.sunshine.app.R;
+
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * Serves the Muzei wallpapers from files, downloaded once and scaled down to the screen.
+ *
+ * Muzei reads the artwork it's given through this provider, so changing the wallpaper costs no
+ * network once the photo of a condition has been downloaded.  The files are named after the
+ * photo and the size it was scaled to, and are read-only.
+ */
+public class WeatherArtProvider extends ContentProvider {
+    private static final String LOG_TAG = WeatherArtProvider.class.getSimpleName();
+
+    private static final String DIR_NAME = "muzei_art";
+
+    private static final long FETCH_TIMEOUT_SECONDS = 60;
+
+    private static final int JPEG_QUALITY = 90;
+
+    /**
+     * @return the content URI of the photo at the size of the screen, downloading it if it
+     * hasn't been yet, or null if it can't be.  Must not be called on the main thread.
+     */
+    static Uri getArtUri(Context context, String imageUrl) {
+        int size = getArtSize(context);
+        String fileName = Integer.toHexString(imageUrl.hashCode()) + "_" + size + ".jpg";
+        File file = new File(getDir(context), fileName);
+        if (!file.exists() && !download(context, imageUrl, size, file)) {
+            return null;
+        }
+        return new Uri.Builder()
+                .scheme("content")
+                .authority(context.getString(R.string.muzei_art_authority))
+                .appendPath(fileName)
+                .build();
+    }
+
+    private static File getDir(Context context) {
+        return new File(context.getCacheDir(), DIR_NAME);
+    }
+
+    /**
+     * @return the size the photos are scaled down to: the longest side of the screen, so that
+     * Muzei can crop them in any orientation.
+     */
+    private static int getArtSize(Context context) {
+        DisplayMetrics metrics = context.getResources().getDisplayMetrics();
+        return Math.max(metrics.widthPixels, metrics.heightPixels);
+    }
+
+    private static boolean download(Context context, String imageUrl, int size, File file) {
+        Bitmap art;
+        try {
+            // Glide downsamples the photo to the smallest size at least as large as this one
+            art = Glide.with(context)
+                    .load(imageUrl)
+                    .asBitmap()
+                    .into(size, size)
+                    .get(FETCH_TIMEOUT_SECONDS, TimeUnit.SECONDS);
+        } catch (InterruptedException | ExecutionException | TimeoutException e) {
+            Log.e(LOG_TAG, "Error retrieving artwork from " + imageUrl, e);
+            return false;
+        }
+
+        // written aside first, so that Muzei never reads half a photo
+        File tmpFile = new File(file.getPath() + ".tmp");
+        try {
+            file.getParentFile().mkdirs();
+            FileOutputStream out = new FileOutputStream(tmpFile);
+            try {
+                art.compress(Bitmap.CompressFormat.JPEG, JPEG_QUALITY, out);
+            } finally {
+                out.close();
+            }
+            if (!tmpFile.renameTo(file)) {
+                throw new IOException("Can't rename " + tmpFile);
+            }
+        } catch (IOException e) {
+            Log.e(LOG_TAG, "Error writing " + file, e);
+            tmpFile.delete();
+            return false;
+        }
+
+        // the photos scaled to another screen won't be served again
+        File[] files = getDir(context).listFiles();
+        if (files != null) {
+            String suffix = "_" + size + ".jpg";
+            for (File cachedFile : files) {
+                if (!cachedFile.getName().endsWith(suffix)) {
+                    cachedFile.delete();
+                }
+            }
+        }
+        return true;
+    }
+
+    @Override
+    public boolean onCreate() {
+        return true;
+    }
+
+    @Override
+    public ParcelFileDescriptor openFile(Uri uri, String mode) throws FileNotFoundException {
+        if (!"r".equals(mode)) {
+            throw new SecurityException("Read-only: " + uri);
+        }
+        String fileName = uri.getLastPathSegment();
+        File dir = getDir(getContext());
+        File file = fileName == null ? null : new File(dir, fileName);
+        // Only the files of the cache itself are served
+        if (file == null || !dir.equals(file.getParentFile()) || !file.exists()) {
+            throw new FileNotFoundException("Unknown artwork: " + uri);
+        }
+        return ParcelFileDescriptor.open(file, ParcelFileDescriptor.MODE_READ_ONLY);
+    }
+
+    @Override
+    public String getType(Uri uri) {
+        return "image/jpeg";
+    }
+
+    @Override
+    public Cursor query(Uri uri, String[] projection, String selection, String[] selectionArgs,
+                        String sortOrder) {
+        return null;
+    }
+
+    @Override
+    public Uri insert(Uri uri, ContentValues values) {
+        throw new UnsupportedOperationException("Read-only: " + uri);
+    }
+
+    @Override
+    public int delete(Uri uri, String selection, String[] selectionArgs) {
+        throw new UnsupportedOperationException("Read-only: " + uri);
+    }
+
+    @Override
+    public int update(Uri uri, ContentValues values, String selection, String[] selectionArgs) {
+        throw new UnsupportedOperationException("Read-only: " + uri);
+    }
+}
@@ -16,28 +16,25 @@
 package com.example.android.sunshine.app.muzei;
 
 import android.content.Intent;
-import android.database.Cursor;
 import android.net.Uri;
+import android.text.TextUtils;
 
 import com.example.android.sunshine.app.MainActivity;
 import com.example.android.sunshine.app.Utility;
-import com.example.android.sunshine.app.data.WeatherContract;
+import com.example.android.sunshine.app.sync.PostSyncDispatcher;
 import com.example.android.sunshine.app.sync.SunshineSyncAdapter;
+import com.example.android.sunshine.app.sync.TodayWeather;
 import com.google.android.apps.muzei.api.Artwork;
 import com.google.android.apps.muzei.api.MuzeiArtSource;
 
 /**
  * Muzei source that changes your background based on the current weather conditions
+ *
+ * The artwork is only published again when the photo, the condition or the location changes,
+ * and it's served from the files of {@link WeatherArtProvider}, so that Muzei doesn't download
+ * and process the same wallpaper again on every sync.
  */
 public class WeatherMuzeiSource extends MuzeiArtSource {
-    private static final String[] FORECAST_COLUMNS = new String[]{
-            WeatherContract.WeatherEntry.COLUMN_WEATHER_ID,
-            WeatherContract.WeatherEntry.COLUMN_SHORT_DESC
-    };
-    // these indices must match the projection
-    private static final int INDEX_WEATHER_ID = 0;
-    private static final int INDEX_SHORT_DESC = 1;
-
     public WeatherMuzeiSource() {
         super("WeatherMuzeiSource");
     }
@@ -47,33 +44,47 @@ public class WeatherMuzeiSource extends MuzeiArtSource {
         super.onHandleIntent(intent);
         boolean dataUpdated = intent != null &&
                 SunshineSyncAdapter.ACTION_DATA_UPDATED.equals(intent.getAction());
-        if (dataUpdated && isEnabled()) {
-            onUpdate(UPDATE_REASON_OTHER);
+        if (dataUpdated) {
+            if (isEnabled()) {
+                onUpdate(UPDATE_REASON_OTHER);
+            }
+            PostSyncDispatcher.getInstance(this)
+                    .reportCompletion(PostSyncDispatcher.CONSUMER_MUZEI);
         }
     }
 
     @Override
     protected void onUpdate(int reason) {
-        String location = Utility.getPreferredLocation(this);
-        Uri weatherForLocationUri = WeatherContract.WeatherEntry.buildWeatherLocationWithStartDate(
-                location, System.currentTimeMillis());
-        Cursor cursor = getContentResolver().query(weatherForLocationUri, FORECAST_COLUMNS, null,
-                null, WeatherContract.WeatherEntry.COLUMN_DATE + " ASC");
-        if (cursor.moveToFirst()) {
-            int weatherId = cursor.getInt(INDEX_WEATHER_ID);
-            String desc = cursor.getString(INDEX_SHORT_DESC);
-
-            String imageUrl = Utility.getImageUrlForWeatherCondition(weatherId);
+        // Today's weather, as the last sync dispatched it or from the ContentProvider
+        TodayWeather today = TodayWeather.get(this);
+        if (today != null) {
+            String imageUrl = Utility.getImageUrlForWeatherCondition(today.weatherId);
             // Only publish a new wallpaper if we have a valid image
-            if (imageUrl != null) {
-                publishArtwork(new Artwork.Builder()
-                        .imageUri(Uri.parse(imageUrl))
-                        .title(desc)
-                        .byline(location)
-                        .viewIntent(new Intent(this, MainActivity.class))
-                        .build());
+            if (imageUrl == null || isPublished(imageUrl, today)) {
+                return;
             }
+            // The downloaded photo, or the original one if it can't be downloaded now, which
+            // isn't tokened so that the downloaded one replaces it on the next update
+            Uri imageUri = WeatherArtProvider.getArtUri(this, imageUrl);
+            publishArtwork(new Artwork.Builder()
+                    .imageUri(imageUri != null ? imageUri : Uri.parse(imageUrl))
+                    .token(imageUri != null ? imageUrl : null)
+                    .title(today.description)
+                    .byline(today.locationSetting)
+                    .viewIntent(new Intent(this, MainActivity.class))
+                    .build());
         }
-        cursor.close();
+    }
+
+    /**
+     * @return whether the artwork of the weather is the one Muzei shows already.
+     */
+    private boolean isPublished(String imageUrl, TodayWeather today) {
+        // Muzei keeps the current artwork of the source across restarts
+        Artwork current = getCurrentArtwork();
+        return current != null
+                && imageUrl.equals(current.getToken())
+                && TextUtils.equals(today.description, current.getTitle())
+                && TextUtils.equals(today.locationSetting, current.getByline());
     }
 }
@@ -0,0 +1,123 @@
+package com.example.android.sunshine.app.sync;
+
+import android.content.ContentResolver;
+import android.content.ContentValues;
+import android.database.Cursor;
+import android.support.v4.util.LongSparseArray;
+
+import com.example.android.sunshine.app.data.WeatherContract;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Compares an incoming forecast with the rows already stored for its location, so that a sync
+ * only writes the days that actually changed.
+ *
+ * Because the weather table resolves its (date, location_id) conflicts with REPLACE, rewriting
+ * an identical day costs a delete plus an insert, and wakes up every observer for nothing.
+ */
+class ForecastDiff {
+
+    private static final String[] COMPARED_COLUMNS = {
+            WeatherContract.WeatherEntry.COLUMN_DATE,
+            WeatherContract.WeatherEntry.COLUMN_SHORT_DESC,
+            WeatherContract.WeatherEntry.COLUMN_WEATHER_ID,
+            WeatherContract.WeatherEntry.COLUMN_MIN_TEMP,
+            WeatherContract.WeatherEntry.COLUMN_MAX_TEMP,
+            WeatherContract.WeatherEntry.COLUMN_HUMIDITY,
+            WeatherContract.WeatherEntry.COLUMN_PRESSURE,
+            WeatherContract.WeatherEntry.COLUMN_WIND_SPEED,
+            WeatherContract.WeatherEntry.COLUMN_DEGREES
+    };
+
+    // these indices must match the projection
+    private static final int INDEX_DATE = 0;
+    private static final int INDEX_SHORT_DESC = 1;
+    private static final int INDEX_FIRST_NUMERIC = 2;
+
+    private final List<ContentValues> mChangedValues = new ArrayList<ContentValues>();
+    private final List<Long> mChangedDates = new ArrayList<Long>();
+
+    private ForecastDiff() {
+    }
+
+    /**
+     * @param locationSetting the location the incoming days belong to.  Looking the stored days
+     *                        up by location setting means the location row doesn't need to
+     *                        exist, nor its id to be known, before the forecast is written.
+     * @param incoming the incoming days, with their date already set.
+     */
+    static ForecastDiff compute(ContentResolver contentResolver, String locationSetting,
+                                List<ContentValues> incoming) {
+        ForecastDiff diff = new ForecastDiff();
+        if (incoming.isEmpty()) {
+            return diff;
+        }
+
+        LongSparseArray<Object[]> storedDays = new LongSparseArray<Object[]>(incoming.size());
+        Cursor cursor = contentResolver.query(
+                WeatherContract.WeatherEntry.buildWeatherLocation(locationSetting),
+                COMPARED_COLUMNS,
+                null,
+                null,
+                null);
+        if (cursor != null) {
+            while (cursor.moveToNext()) {
+                Object[] storedDay = new Object[COMPARED_COLUMNS.length];
+                storedDay[INDEX_SHORT_DESC] = cursor.getString(INDEX_SHORT_DESC);
+                for (int i = INDEX_FIRST_NUMERIC; i < COMPARED_COLUMNS.length; i++) {
+                    storedDay[i] = cursor.getDouble(i);
+                }
+                storedDays.put(cursor.getLong(INDEX_DATE), storedDay);
+            }
+            cursor.close();
+        }
+
+        for (ContentValues incomingDay : incoming) {
+            long date = WeatherContract.normalizeDate(
+                    incomingDay.getAsLong(WeatherContract.WeatherEntry.COLUMN_DATE));
+            if (!isSameDay(storedDays.get(date), incomingDay)) {
+                diff.mChangedValues.add(incomingDay);
+                diff.mChangedDates.add(date);
+            }
+        }
+        return diff;
+    }
+
+    private static boolean isSameDay(Object[] storedDay, ContentValues incomingDay) {
+        if (storedDay == null) {
+            return false;
+        }
+        String description = incomingDay.getAsString(COMPARED_COLUMNS[INDEX_SHORT_DESC]);
+        if (description == null || !description.equals(storedDay[INDEX_SHORT_DESC])) {
+            return false;
+        }
+        for (int i = INDEX_FIRST_NUMERIC; i < COMPARED_COLUMNS.length; i++) {
+            // REAL columns round-trip doubles exactly, and integers are stored as REAL too.
+            Double value = incomingDay.getAsDouble(COMPARED_COLUMNS[i]);
+            if (value == null || value.doubleValue() != (Double) storedDay[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    boolean hasChanges() {
+        return !mChangedValues.isEmpty();
+    }
+
+    /**
+     * @return the incoming days that are new or differ from the stored ones.
+     */
+    ContentValues[] getChangedValues() {
+        return mChangedValues.toArray(new ContentValues[mChangedValues.size()]);
+    }
+
+    /**
+     * @return the normalized dates of {@link #getChangedValues()}, in the same order.
+     */
+    List<Long> getChangedDates() {
+        return mChangedDates;
+    }
+}
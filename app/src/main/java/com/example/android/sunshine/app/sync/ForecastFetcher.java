@@ -0,0 +1,443 @@
+package com.example.android.sunshine.app.sync;
+
+import android.annotation.TargetApi;
+import android.content.ContentValues;
+import android.content.Context;
+import android.database.Cursor;
+import android.net.Uri;
+import android.os.Build;
+import android.util.Log;
+
+import com.example.android.sunshine.app.BuildConfig;
+import com.example.android.sunshine.app.data.WeatherContract;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Semaphore;
+
+/**
+ * Downloads and parses the OpenWeatherMap forecast of a single location.
+ *
+ * A fetcher doesn't write anything to the database and keeps no state between calls, so the
+ * forecasts of several locations can be fetched at the same time.  Whatever the number of
+ * threads doing so, no more than {@link #MAX_CONNECTIONS_PER_HOST} requests are sent to the same
+ * host at once.
+ */
+class ForecastFetcher {
+    private static final String LOG_TAG = ForecastFetcher.class.getSimpleName();
+
+    static final int MAX_CONNECTIONS_PER_HOST = 4;
+
+    private static final Map<String, Semaphore> sHostPermits = new HashMap<String, Semaphore>();
+
+    private static final String HEADER_ETAG = "ETag";
+
+    private static final String FORMAT = "json";
+    private static final String UNITS = "metric";
+    private static final int NUM_DAYS = 14;
+
+    /**
+     * What a fetch brought back for one location.
+     */
+    static class Result {
+        final String locationSetting;
+        @SunshineSyncAdapter.LocationStatus int status = SunshineSyncAdapter.LOCATION_STATUS_UNKNOWN;
+        // The server answered "304 Not Modified": the stored forecast is still current.
+        boolean notModified;
+
+        String cityName;
+        double cityLatitude;
+        double cityLongitude;
+        // The weather values of each day, in order, starting from today.  They don't have a
+        // location key nor a date yet.  They're kept rather than written as they're decoded, as
+        // they're compared with the stored days and written along with the other locations in
+        // a single transaction; there are at most as many as requested, whatever the server
+        // sends.
+        final List<ContentValues> days = new ArrayList<ContentValues>(NUM_DAYS);
+        // The number of days asked for with the "cnt" query parameter.
+        int requestedDays = NUM_DAYS;
+        // The days the server sent beyond the requested ones, which aren't kept.
+        int droppedDays;
+
+        // Validators of the response, to be saved once the forecast is stored.
+        String url;
+        String eTag;
+        long lastModified;
+
+        Result(String locationSetting) {
+            this.locationSetting = locationSetting;
+        }
+
+        boolean hasForecast() {
+            return status == SunshineSyncAdapter.LOCATION_STATUS_OK && !notModified;
+        }
+    }
+
+    private final Context mContext;
+    private final ForecastValidatorStore mValidatorStore;
+
+    ForecastFetcher(Context context) {
+        mContext = context;
+        mValidatorStore = new ForecastValidatorStore(context);
+    }
+
+    /**
+     * Fetches the forecast of a location.
+     *
+     * @param locationSetting The location string used to request updates from the server.
+     * @param latitude latitude to query instead of the location string, or null.
+     * @param longitude longitude to query instead of the location string, or null.
+     */
+    Result fetch(String locationSetting, String latitude, String longitude) {
+        Result result = new Result(locationSetting);
+
+        // These two need to be declared outside the try/catch
+        // so that they can be closed in the finally block.
+        HttpURLConnection urlConnection = null;
+        BufferedReader reader = null;
+        Semaphore hostPermits = null;
+        boolean hostPermitAcquired = false;
+
+        try {
+            // Construct the URL for the OpenWeatherMap query
+            // Possible parameters are avaiable at OWM's forecast API page, at
+            // http://openweathermap.org/API#forecast
+            final String FORECAST_BASE_URL =
+                    "http://api.openweathermap.org/data/2.5/forecast/daily?";
+            final String QUERY_PARAM = "q";
+            final String LAT_PARAM = "lat";
+            final String LON_PARAM = "lon";
+            final String FORMAT_PARAM = "mode";
+            final String UNITS_PARAM = "units";
+            final String DAYS_PARAM = "cnt";
+            final String APPID_PARAM = "appid";
+
+            Uri.Builder uriBuilder = Uri.parse(FORECAST_BASE_URL).buildUpon();
+
+            // Instead of always building the query based off of the location string, we want to
+            // potentially build a query using a lat/lon value. This will be the case when we are
+            // syncing based off of a new location from the Place Picker API. Otherwise, the weather
+            // service may not understand the location address provided by the Place Picker API
+            // and the user could end up with no weather! The horror!
+            if (latitude != null && longitude != null) {
+                uriBuilder.appendQueryParameter(LAT_PARAM, latitude)
+                        .appendQueryParameter(LON_PARAM, longitude);
+            } else {
+                uriBuilder.appendQueryParameter(QUERY_PARAM, locationSetting);
+            }
+
+            Uri builtUri = uriBuilder.appendQueryParameter(FORMAT_PARAM, FORMAT)
+                    .appendQueryParameter(UNITS_PARAM, UNITS)
+                    .appendQueryParameter(DAYS_PARAM, Integer.toString(result.requestedDays))
+                    .appendQueryParameter(APPID_PARAM, BuildConfig.OPEN_WEATHER_MAP_API_KEY)
+                    .build();
+
+            URL url = new URL(builtUri.toString());
+            result.url = url.toString();
+
+            hostPermits = getHostPermits(url.getHost());
+            hostPermits.acquire();
+            hostPermitAcquired = true;
+
+            // Create the request to OpenWeatherMap, and open the connection
+            urlConnection = (HttpURLConnection) url.openConnection();
+            urlConnection.setRequestMethod("GET");
+
+            // Only ask for the forecast if it changed since the one we stored, as long as we
+            // still have that one.
+            if (hasTodayForecast(locationSetting)) {
+                mValidatorStore.addValidators(urlConnection, locationSetting);
+            }
+            urlConnection.connect();
+
+            if (urlConnection.getResponseCode() == HttpURLConnection.HTTP_NOT_MODIFIED) {
+                // Nothing changed on the server: no parsing, no writes, and nobody to tell.
+                result.notModified = true;
+                result.status = SunshineSyncAdapter.LOCATION_STATUS_OK;
+                return result;
+            }
+
+            InputStream inputStream = urlConnection.getInputStream();
+            if (inputStream == null) {
+                // Nothing to do.
+                return result;
+            }
+
+            // Decode the forecast one day at a time straight from the connection when we can,
+            // rather than holding the whole response and its JSONObject tree in memory.
+            if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.HONEYCOMB) {
+                getWeatherDataFromStream(inputStream, result);
+            } else {
+                // Read the input stream into a String
+                StringBuffer buffer = new StringBuffer();
+                reader = new BufferedReader(new InputStreamReader(inputStream));
+
+                String line;
+                while ((line = reader.readLine()) != null) {
+                    // Since it's JSON, adding a newline isn't necessary (it won't affect parsing)
+                    // But it does make debugging a *lot* easier if you print out the completed
+                    // buffer for debugging.
+                    buffer.append(line + "\n");
+                }
+
+                if (buffer.length() == 0) {
+                    // Stream was empty.  No point in parsing.
+                    result.status = SunshineSyncAdapter.LOCATION_STATUS_SERVER_DOWN;
+                    return result;
+                }
+                getWeatherDataFromJson(buffer.toString(), result);
+            }
+
+            if (result.droppedDays > 0) {
+                Log.w(LOG_TAG, "Forecast of " + locationSetting + ": " + result.droppedDays
+                        + " days beyond the " + result.requestedDays + " requested dropped");
+            }
+            if (result.status == SunshineSyncAdapter.LOCATION_STATUS_OK) {
+                result.eTag = urlConnection.getHeaderField(HEADER_ETAG);
+                result.lastModified = urlConnection.getLastModified();
+            }
+        } catch (IOException e) {
+            Log.e(LOG_TAG, "Error ", e);
+            // If the code didn't successfully get the weather data, there's no point in attempting
+            // to parse it.
+            result.status = SunshineSyncAdapter.LOCATION_STATUS_SERVER_DOWN;
+        } catch (JSONException e) {
+            Log.e(LOG_TAG, e.getMessage(), e);
+            e.printStackTrace();
+            result.status = SunshineSyncAdapter.LOCATION_STATUS_SERVER_INVALID;
+        } catch (InterruptedException e) {
+            Log.d(LOG_TAG, "Fetch of " + locationSetting + " interrupted");
+            Thread.currentThread().interrupt();
+        } finally {
+            if (urlConnection != null) {
+                urlConnection.disconnect();
+            }
+            if (reader != null) {
+                try {
+                    reader.close();
+                } catch (final IOException e) {
+                    Log.e(LOG_TAG, "Error closing stream", e);
+                }
+            }
+            if (hostPermitAcquired) {
+                hostPermits.release();
+            }
+        }
+        if (result.status == SunshineSyncAdapter.LOCATION_STATUS_INVALID) {
+            // The server doesn't know the location anymore, so the next request, if the location
+            // comes back, must download the forecast rather than validate the stale one.
+            mValidatorStore.clearValidators(locationSetting);
+        }
+        return result;
+    }
+
+    /**
+     * Saves the validators of a result whose forecast has been stored, so that the next fetch of
+     * the location can be conditional.
+     */
+    void saveValidators(Result result) {
+        mValidatorStore.saveValidators(result.locationSetting, result.url, result.eTag,
+                result.lastModified);
+    }
+
+    private static Semaphore getHostPermits(String host) {
+        synchronized (sHostPermits) {
+            Semaphore permits = sHostPermits.get(host);
+            if (permits == null) {
+                permits = new Semaphore(MAX_CONNECTIONS_PER_HOST, true);
+                sHostPermits.put(host, permits);
+            }
+            return permits;
+        }
+    }
+
+    /**
+     * A conditional request is only worth sending when today's forecast is still in the
+     * database, otherwise a "304 Not Modified" would leave us with nothing to show.
+     */
+    private boolean hasTodayForecast(String locationSetting) {
+        Cursor cursor = mContext.getContentResolver().query(
+                WeatherContract.WeatherEntry.buildWeatherLocationWithDate(
+                        locationSetting, System.currentTimeMillis()),
+                new String[]{WeatherContract.WeatherEntry.TABLE_NAME + "." + WeatherContract.WeatherEntry._ID},
+                null,
+                null,
+                null);
+        if (cursor == null) {
+            return false;
+        }
+        boolean hasForecast = cursor.moveToFirst();
+        cursor.close();
+        return hasForecast;
+    }
+
+    /**
+     * Take the String representing the complete forecast in JSON Format and
+     * pull out the data we need to construct the Strings needed for the wireframes.
+     *
+     * Fortunately parsing is easy:  constructor takes the JSON string and converts it
+     * into an Object hierarchy for us.
+     *
+     * Only used before Honeycomb, where android.util.JsonReader isn't available.
+     */
+    private void getWeatherDataFromJson(String forecastJsonStr, Result result)
+            throws JSONException {
+
+        // These are the names of the JSON objects that need to be extracted.
+
+        // Location information
+        final String OWM_CITY = "city";
+        final String OWM_CITY_NAME = "name";
+        final String OWM_COORD = "coord";
+
+        // Location coordinate
+        final String OWM_LATITUDE = "lat";
+        final String OWM_LONGITUDE = "lon";
+
+        // Weather information.  Each day's forecast info is an element of the "list" array.
+        final String OWM_LIST = "list";
+
+        final String OWM_PRESSURE = "pressure";
+        final String OWM_HUMIDITY = "humidity";
+        final String OWM_WINDSPEED = "speed";
+        final String OWM_WIND_DIRECTION = "deg";
+
+        // All temperatures are children of the "temp" object.
+        final String OWM_TEMPERATURE = "temp";
+        final String OWM_MAX = "max";
+        final String OWM_MIN = "min";
+
+        final String OWM_WEATHER = "weather";
+        final String OWM_DESCRIPTION = "main";
+        final String OWM_WEATHER_ID = "id";
+
+        final String OWM_MESSAGE_CODE = "cod";
+
+        JSONObject forecastJson = new JSONObject(forecastJsonStr);
+
+        // do we have an error?
+        if ( forecastJson.has(OWM_MESSAGE_CODE) ) {
+            result.status = getStatusForMessageCode(forecastJson.getInt(OWM_MESSAGE_CODE));
+            if (result.status != SunshineSyncAdapter.LOCATION_STATUS_OK) {
+                return;
+            }
+        }
+
+        JSONArray weatherArray = forecastJson.getJSONArray(OWM_LIST);
+
+        JSONObject cityJson = forecastJson.getJSONObject(OWM_CITY);
+        result.cityName = cityJson.getString(OWM_CITY_NAME);
+
+        JSONObject cityCoord = cityJson.getJSONObject(OWM_COORD);
+        result.cityLatitude = cityCoord.getDouble(OWM_LATITUDE);
+        result.cityLongitude = cityCoord.getDouble(OWM_LONGITUDE);
+
+        int dayCount = Math.min(weatherArray.length(), result.requestedDays);
+        result.droppedDays = weatherArray.length() - dayCount;
+        for(int i = 0; i < dayCount; i++) {
+            // These are the values that will be collected.
+            double pressure;
+            int humidity;
+            double windSpeed;
+            double windDirection;
+
+            double high;
+            double low;
+
+            String description;
+            int weatherId;
+
+            // Get the JSON object representing the day
+            JSONObject dayForecast = weatherArray.getJSONObject(i);
+
+            pressure = dayForecast.getDouble(OWM_PRESSURE);
+            humidity = dayForecast.getInt(OWM_HUMIDITY);
+            windSpeed = dayForecast.getDouble(OWM_WINDSPEED);
+            windDirection = dayForecast.getDouble(OWM_WIND_DIRECTION);
+
+            // Description is in a child array called "weather", which is 1 element long.
+            // That element also contains a weather code.
+            JSONObject weatherObject =
+                    dayForecast.getJSONArray(OWM_WEATHER).getJSONObject(0);
+            description = weatherObject.getString(OWM_DESCRIPTION);
+            weatherId = weatherObject.getInt(OWM_WEATHER_ID);
+
+            // Temperatures are in a child object called "temp".  Try not to name variables
+            // "temp" when working with temperature.  It confuses everybody.
+            JSONObject temperatureObject = dayForecast.getJSONObject(OWM_TEMPERATURE);
+            high = temperatureObject.getDouble(OWM_MAX);
+            low = temperatureObject.getDouble(OWM_MIN);
+
+            ContentValues weatherValues = new ContentValues();
+
+            weatherValues.put(WeatherContract.WeatherEntry.COLUMN_HUMIDITY, humidity);
+            weatherValues.put(WeatherContract.WeatherEntry.COLUMN_PRESSURE, pressure);
+            weatherValues.put(WeatherContract.WeatherEntry.COLUMN_WIND_SPEED, windSpeed);
+            weatherValues.put(WeatherContract.WeatherEntry.COLUMN_DEGREES, windDirection);
+            weatherValues.put(WeatherContract.WeatherEntry.COLUMN_MAX_TEMP, high);
+            weatherValues.put(WeatherContract.WeatherEntry.COLUMN_MIN_TEMP, low);
+            weatherValues.put(WeatherContract.WeatherEntry.COLUMN_SHORT_DESC, description);
+            weatherValues.put(WeatherContract.WeatherEntry.COLUMN_WEATHER_ID, weatherId);
+
+            result.days.add(weatherValues);
+        }
+        result.status = SunshineSyncAdapter.LOCATION_STATUS_OK;
+    }
+
+    /**
+     * Streaming counterpart of {@link #getWeatherDataFromJson(String, Result)}: the days of the
+     * forecast are decoded one at a time from the response stream by {@link ForecastJsonReader},
+     * so neither the raw response nor a JSONObject tree of it is ever held in memory.
+     */
+    @TargetApi(Build.VERSION_CODES.HONEYCOMB)
+    private void getWeatherDataFromStream(InputStream inputStream, final Result result)
+            throws IOException, JSONException {
+        ForecastJsonReader forecastReader = new ForecastJsonReader(new ForecastJsonReader.Listener() {
+            @Override
+            public void onDay(ContentValues weatherValues) {
+                if (result.days.size() < result.requestedDays) {
+                    result.days.add(weatherValues);
+                } else {
+                    result.droppedDays++;
+                }
+            }
+        });
+
+        result.status = getStatusForMessageCode(forecastReader.read(inputStream));
+        if (result.status != SunshineSyncAdapter.LOCATION_STATUS_OK) {
+            result.days.clear();
+            return;
+        }
+
+        result.cityName = forecastReader.getCityName();
+        result.cityLatitude = forecastReader.getCityLatitude();
+        result.cityLongitude = forecastReader.getCityLongitude();
+    }
+
+    /**
+     * Converts the "cod" message code sent by OpenWeatherMap into a location status.
+     */
+    @SunshineSyncAdapter.LocationStatus
+    private static int getStatusForMessageCode(int messageCode) {
+        switch (messageCode) {
+            case HttpURLConnection.HTTP_OK:
+                return SunshineSyncAdapter.LOCATION_STATUS_OK;
+            case HttpURLConnection.HTTP_NOT_FOUND:
+                return SunshineSyncAdapter.LOCATION_STATUS_INVALID;
+            default:
+                return SunshineSyncAdapter.LOCATION_STATUS_SERVER_DOWN;
+        }
+    }
+}
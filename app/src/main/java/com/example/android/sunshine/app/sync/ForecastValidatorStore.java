@@ -0,0 +1,90 @@
+package com.example.android.sunshine.app.sync;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.text.TextUtils;
+
+import java.net.HttpURLConnection;
+
+/**
+ * Remembers the HTTP validators (ETag and Last-Modified) of the last forecast stored for each
+ * location setting, so that a sync can ask OpenWeatherMap to only send the forecast back if it
+ * changed since then.
+ *
+ * Validators are kept together with the request URL they were received for: if the request for
+ * a location changes (e.g. a lat/lon from the Place Picker is now available), they are ignored.
+ */
+class ForecastValidatorStore {
+    private static final String PREFS_NAME = "forecast_validators";
+
+    private static final String KEY_URL_PREFIX = "url:";
+    private static final String KEY_ETAG_PREFIX = "etag:";
+    private static final String KEY_LAST_MODIFIED_PREFIX = "last_modified:";
+
+    private static final String HEADER_IF_NONE_MATCH = "If-None-Match";
+
+    private final SharedPreferences mPrefs;
+
+    ForecastValidatorStore(Context context) {
+        mPrefs = context.getSharedPreferences(PREFS_NAME, Context.MODE_PRIVATE);
+    }
+
+    /**
+     * Adds the If-None-Match and If-Modified-Since headers to a request that hasn't been
+     * connected yet, if validators were saved for this location and request.
+     *
+     * @return true if the request is now conditional, i.e. the server may answer 304.
+     */
+    boolean addValidators(HttpURLConnection connection, String locationSetting) {
+        String url = mPrefs.getString(KEY_URL_PREFIX + locationSetting, null);
+        if (url == null || !url.equals(connection.getURL().toString())) {
+            return false;
+        }
+
+        boolean conditional = false;
+        String eTag = mPrefs.getString(KEY_ETAG_PREFIX + locationSetting, null);
+        if (!TextUtils.isEmpty(eTag)) {
+            connection.setRequestProperty(HEADER_IF_NONE_MATCH, eTag);
+            conditional = true;
+        }
+        long lastModified = mPrefs.getLong(KEY_LAST_MODIFIED_PREFIX + locationSetting, 0);
+        if (lastModified > 0) {
+            connection.setIfModifiedSince(lastModified);
+            conditional = true;
+        }
+        return conditional;
+    }
+
+    /**
+     * Saves the validators of a response whose forecast has been stored.  They are read from the
+     * response by the fetcher, as the connection is long closed by then.  This function should
+     * not be called from the UI thread because it uses commit to write to the shared preferences.
+     */
+    void saveValidators(String locationSetting, String url, String eTag, long lastModified) {
+        SharedPreferences.Editor editor = mPrefs.edit();
+        if (TextUtils.isEmpty(eTag) && lastModified <= 0) {
+            // Nothing to validate the next request with.
+            removeValidators(editor, locationSetting);
+        } else {
+            editor.putString(KEY_URL_PREFIX + locationSetting, url);
+            editor.putString(KEY_ETAG_PREFIX + locationSetting, eTag);
+            editor.putLong(KEY_LAST_MODIFIED_PREFIX + locationSetting, lastModified);
+        }
+        editor.commit();
+    }
+
+    /**
+     * Forgets the validators of a location, so that the next request downloads the forecast.
+     */
+    void clearValidators(String locationSetting) {
+        SharedPreferences.Editor editor = mPrefs.edit();
+        removeValidators(editor, locationSetting);
+        editor.commit();
+    }
+
+    private static void removeValidators(SharedPreferences.Editor editor, String locationSetting) {
+        editor.remove(KEY_URL_PREFIX + locationSetting);
+        editor.remove(KEY_ETAG_PREFIX + locationSetting);
+        editor.remove(KEY_LAST_MODIFIED_PREFIX + locationSetting);
+    }
+}
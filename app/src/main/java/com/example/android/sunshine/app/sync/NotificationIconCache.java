@@ -0,0 +1,175 @@
+package com.example.android.sunshine.app.sync;
+
+import android.annotation.SuppressLint;
+import android.content.Context;
+import android.content.res.Resources;
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.os.Build;
+import android.util.Log;
+
+import com.bumptech.glide.Glide;
+import com.example.android.sunshine.app.R;
+import com.example.android.sunshine.app.SunshineSettings;
+import com.example.android.sunshine.app.Utility;
+import com.example.android.sunshine.shared.WeatherConditions;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * The large icons of the weather notification, rendered ahead of time at the size of a
+ * notification's large icon, in files.
+ *
+ * The icons of every kind of art of the current art pack are rendered at once, on the cache's
+ * own thread, when it's warmed.  The notification then only decodes a small file, and never
+ * waits for an art pack to be downloaded.  With local graphics, the icons are rendered from the
+ * app's own art rather than from the Sunshine art pack, which has the same images.
+ */
+public class NotificationIconCache {
+    private static final String LOG_TAG = NotificationIconCache.class.getSimpleName();
+
+    private static final String DIR_NAME = "notification_icons";
+
+    private static final long FETCH_TIMEOUT_SECONDS = 30;
+
+    private static final ExecutorService sExecutor = Executors.newSingleThreadExecutor();
+
+    private NotificationIconCache() {
+    }
+
+    /**
+     * @return the large icon of the weather condition in the current art pack, or null if it
+     * hasn't been rendered yet.
+     */
+    static Bitmap get(Context context, int weatherId) {
+        int art = WeatherConditions.getArt(weatherId);
+        if (art == WeatherConditions.ART_NONE) {
+            return null;
+        }
+        File file = getFile(context, SunshineSettings.get(context), art);
+        return file.exists() ? BitmapFactory.decodeFile(file.getPath()) : null;
+    }
+
+    /**
+     * Renders the icons of the current art pack that haven't been yet, in the background.
+     */
+    public static void warm(Context context) {
+        final Context appContext = context.getApplicationContext();
+        sExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                SunshineSettings settings = SunshineSettings.get(appContext);
+                Set<File> files = new HashSet<File>(WeatherConditions.ART_COUNT);
+                for (int art = 0; art < WeatherConditions.ART_COUNT; art++) {
+                    File file = getFile(appContext, settings, art);
+                    files.add(file);
+                    if (!file.exists()) {
+                        render(appContext, settings, art, file);
+                    }
+                }
+                // the icons of the previous art packs, or sizes, won't be shown again
+                File[] cachedFiles = new File(appContext.getCacheDir(), DIR_NAME).listFiles();
+                if (cachedFiles != null) {
+                    for (File cachedFile : cachedFiles) {
+                        if (!files.contains(cachedFile)) {
+                            cachedFile.delete();
+                        }
+                    }
+                }
+            }
+        });
+    }
+
+    private static File getFile(Context context, SunshineSettings settings, int art) {
+        // Named after the art pack, the kind of art and the size
+        String pack = settings.usingLocalGraphics
+                ? "local" : Integer.toHexString(settings.getArtUrlForArt(art).hashCode());
+        int[] size = getIconSize(context);
+        return new File(new File(context.getCacheDir(), DIR_NAME), pack + "_"
+                + WeatherConditions.getArtName(art) + "_" + size[0] + "x" + size[1] + ".png");
+    }
+
+    private static void render(Context context, SunshineSettings settings, int art, File file) {
+        int[] size = getIconSize(context);
+        Bitmap icon = null;
+        if (settings.usingLocalGraphics) {
+            Bitmap artBitmap = BitmapFactory.decodeResource(context.getResources(),
+                    Utility.getArtResourceForArt(art));
+            if (artBitmap != null) {
+                icon = fitCenter(artBitmap, size[0], size[1]);
+            }
+        } else {
+            String artUrl = settings.getArtUrlForArt(art);
+            try {
+                icon = Glide.with(context)
+                        .load(artUrl)
+                        .asBitmap()
+                        .fitCenter()
+                        .into(size[0], size[1])
+                        .get(FETCH_TIMEOUT_SECONDS, TimeUnit.SECONDS);
+            } catch (InterruptedException | ExecutionException | TimeoutException e) {
+                Log.e(LOG_TAG, "Error retrieving large icon from " + artUrl, e);
+            }
+        }
+        if (icon != null) {
+            write(icon, file);
+        }
+    }
+
+    private static void write(Bitmap icon, File file) {
+        // written aside first, so that the notification never decodes half an icon
+        File tmpFile = new File(file.getPath() + ".tmp");
+        try {
+            file.getParentFile().mkdirs();
+            FileOutputStream out = new FileOutputStream(tmpFile);
+            try {
+                icon.compress(Bitmap.CompressFormat.PNG, 100, out);
+            } finally {
+                out.close();
+            }
+            if (!tmpFile.renameTo(file)) {
+                throw new IOException("Can't rename " + tmpFile);
+            }
+        } catch (IOException e) {
+            Log.e(LOG_TAG, "Error writing " + file, e);
+            tmpFile.delete();
+        }
+    }
+
+    /**
+     * @return the largest scaled copy of the bitmap that fits in the size, keeping its ratio.
+     */
+    private static Bitmap fitCenter(Bitmap bitmap, int width, int height) {
+        float scale = Math.min((float) width / bitmap.getWidth(),
+                (float) height / bitmap.getHeight());
+        return Bitmap.createScaledBitmap(bitmap, Math.max(1, Math.round(bitmap.getWidth() * scale)),
+                Math.max(1, Math.round(bitmap.getHeight() * scale)), true);
+    }
+
+    /**
+     * @return the width and height of a notification's large icon.
+     */
+    private static int[] getIconSize(Context context) {
+        Resources resources = context.getResources();
+        // On Honeycomb and higher devices, we can retrieve the size of the large icon
+        // Prior to that, we use a fixed size
+        @SuppressLint("InlinedApi")
+        int largeIconWidth = Build.VERSION.SDK_INT >= Build.VERSION_CODES.HONEYCOMB
+                ? resources.getDimensionPixelSize(android.R.dimen.notification_large_icon_width)
+                : resources.getDimensionPixelSize(R.dimen.notification_large_icon_default);
+        @SuppressLint("InlinedApi")
+        int largeIconHeight = Build.VERSION.SDK_INT >= Build.VERSION_CODES.HONEYCOMB
+                ? resources.getDimensionPixelSize(android.R.dimen.notification_large_icon_height)
+                : resources.getDimensionPixelSize(R.dimen.notification_large_icon_default);
+        return new int[] {largeIconWidth, largeIconHeight};
+    }
+}
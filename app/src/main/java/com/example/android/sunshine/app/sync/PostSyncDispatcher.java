@@ -0,0 +1,216 @@
+package com.example.android.sunshine.app.sync;
+
+import android.content.Context;
+import android.content.Intent;
+import android.os.Build;
+import android.os.Handler;
+import android.os.HandlerThread;
+import android.os.Message;
+import android.os.SystemClock;
+import android.util.Log;
+
+import com.example.android.sunshine.app.muzei.WeatherMuzeiSource;
+import com.example.android.sunshine.app.wearable.WearGateway;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Lets the widgets, Muzei, the wearables and the notification know about the weather a sync
+ * stored.
+ *
+ * The syncs ending within {@link #DEBOUNCE_MS} of the first one, e.g. a manual refresh, a GCM
+ * message and the periodic sync, are coalesced into a single dispatch.  A dispatch hands today's
+ * weather, as the last sync parsed it, to all of them at once, each on its own thread.  Each
+ * consumer reports back with {@link #reportCompletion} once it has done its work, e.g. once the
+ * widgets are rendered or the forecast is on the watch, and the time from the dispatch to then
+ * is recorded per consumer.  A dispatch also warms the large icons of the notification, so that
+ * neither the sync nor the notification waits on an image.
+ */
+public class PostSyncDispatcher {
+    private static final String LOG_TAG = PostSyncDispatcher.class.getSimpleName();
+
+    private static final long DEBOUNCE_MS = 5000;
+
+    // What a dispatch has to do
+    private static final int FLAG_DATA_CHANGED = 1;
+    private static final int FLAG_DATA_STORED = 2;
+
+    public static final int CONSUMER_WIDGETS = 0;
+    public static final int CONSUMER_MUZEI = 1;
+    public static final int CONSUMER_WEARABLES = 2;
+    public static final int CONSUMER_NOTIFICATION = 3;
+    private static final String[] CONSUMER_NAMES = {"widgets", "muzei", "wearables", "notification"};
+
+    private static final int MSG_DISPATCH = 0;
+
+    private static PostSyncDispatcher sInstance;
+
+    private final Context mContext;
+    private final Handler mHandler;
+    private final ExecutorService mExecutor;
+    private int mPendingFlags;
+    private TodayWeather mPendingToday;
+
+    // When the work of each consumer was dispatched, or 0 once it reported its completion
+    private final AtomicLongArray mDispatchTimes = new AtomicLongArray(CONSUMER_NAMES.length);
+    private final AtomicLongArray mCompletionTotals = new AtomicLongArray(CONSUMER_NAMES.length);
+    private final AtomicLongArray mCompletionCounts = new AtomicLongArray(CONSUMER_NAMES.length);
+
+    public static synchronized PostSyncDispatcher getInstance(Context context) {
+        if (sInstance == null) {
+            sInstance = new PostSyncDispatcher(context.getApplicationContext());
+        }
+        return sInstance;
+    }
+
+    private PostSyncDispatcher(Context context) {
+        mContext = context;
+
+        // A thread per consumer, which goes away once they're idle
+        ThreadPoolExecutor executor = new ThreadPoolExecutor(CONSUMER_NAMES.length,
+                CONSUMER_NAMES.length, 30, TimeUnit.SECONDS, new LinkedBlockingQueue<Runnable>());
+        executor.allowCoreThreadTimeOut(true);
+        mExecutor = executor;
+
+        HandlerThread thread = new HandlerThread(LOG_TAG);
+        thread.start();
+        mHandler = new Handler(thread.getLooper()) {
+            @Override
+            public void handleMessage(Message message) {
+                if (message.what == MSG_DISPATCH) {
+                    int flags;
+                    TodayWeather today;
+                    synchronized (mHandler) {
+                        flags = mPendingFlags;
+                        today = mPendingToday;
+                        mPendingFlags = 0;
+                        mPendingToday = null;
+                    }
+                    dispatch(flags, today);
+                }
+            }
+        };
+    }
+
+    /**
+     * Dispatches the weather a sync stored, along with the weather of the syncs ending before
+     * it's dispatched.
+     *
+     * @param preferredChanged whether the weather of the preferred location changed, which the
+     *                         widgets, Muzei and the wearables show.
+     * @param today today's weather at the preferred location, as the sync parsed it, or null if
+     *              it wasn't part of the forecast.
+     */
+    void requestDispatch(boolean preferredChanged, TodayWeather today) {
+        if (today != null) {
+            TodayWeather.publish(today);
+        } else {
+            // Until the dispatch reads it, today's weather is read from the provider
+            TodayWeather.invalidate();
+        }
+        synchronized (mHandler) {
+            mPendingFlags |= FLAG_DATA_STORED | (preferredChanged ? FLAG_DATA_CHANGED : 0);
+            // the latest sync has the latest weather
+            mPendingToday = today;
+            if (mHandler.hasMessages(MSG_DISPATCH)) {
+                Log.d(LOG_TAG, "requestDispatch: coalesced");
+                return;
+            }
+            mHandler.sendEmptyMessageDelayed(MSG_DISPATCH, DEBOUNCE_MS);
+        }
+    }
+
+    /**
+     * Records that the consumer is done with the last dispatch, whether it had anything to
+     * change or not.  Its work not triggered by a dispatch, e.g. the watch asking for the
+     * weather, isn't recorded.
+     */
+    public void reportCompletion(int consumer) {
+        long dispatchTime = mDispatchTimes.getAndSet(consumer, 0);
+        if (dispatchTime == 0) {
+            return;
+        }
+        long latency = SystemClock.elapsedRealtime() - dispatchTime;
+        mCompletionTotals.addAndGet(consumer, latency);
+        mCompletionCounts.incrementAndGet(consumer);
+        Log.d(LOG_TAG, "reportCompletion: " + CONSUMER_NAMES[consumer] + " done " + latency
+                + " ms after the dispatch, " + getAverageCompletionMillis(consumer)
+                + " ms on average");
+    }
+
+    /**
+     * @return how long the consumer took, on average, from a dispatch to the completion of its
+     * work, in milliseconds.
+     */
+    public long getAverageCompletionMillis(int consumer) {
+        long count = mCompletionCounts.get(consumer);
+        return count == 0 ? 0 : mCompletionTotals.get(consumer) / count;
+    }
+
+    /**
+     * Hands today's weather to the consumers, on the dispatcher's thread.
+     */
+    private void dispatch(int flags, TodayWeather parsedToday) {
+        final TodayWeather today = parsedToday != null
+                ? parsedToday : TodayWeather.refresh(mContext);
+        NotificationIconCache.warm(mContext);
+
+        // The widgets, Muzei and the wearables only show the preferred location, and nobody
+        // needs to redraw identical data
+        if ((flags & FLAG_DATA_CHANGED) != 0) {
+            execute(CONSUMER_WIDGETS, new Runnable() {
+                @Override
+                public void run() {
+                    // Setting the package ensures that only components in our app will receive
+                    // the broadcast
+                    Intent dataUpdatedIntent = new Intent(SunshineSyncAdapter.ACTION_DATA_UPDATED)
+                            .setPackage(mContext.getPackageName());
+                    mContext.sendBroadcast(dataUpdatedIntent);
+                }
+            });
+            // Muzei is only compatible with Jelly Bean MR1+ devices, so there's no need to update
+            // the Muzei background on lower API level devices
+            if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.JELLY_BEAN_MR1) {
+                execute(CONSUMER_MUZEI, new Runnable() {
+                    @Override
+                    public void run() {
+                        mContext.startService(new Intent(SunshineSyncAdapter.ACTION_DATA_UPDATED)
+                                .setClass(mContext, WeatherMuzeiSource.class));
+                    }
+                });
+            }
+            execute(CONSUMER_WEARABLES, new Runnable() {
+                @Override
+                public void run() {
+                    WearGateway.getInstance(mContext).requestUpdate();
+                }
+            });
+        }
+        if ((flags & FLAG_DATA_STORED) != 0) {
+            execute(CONSUMER_NOTIFICATION, new Runnable() {
+                @Override
+                public void run() {
+                    WeatherNotification.notifyWeather(mContext, today);
+                }
+            });
+        }
+    }
+
+    private void execute(final int consumer, final Runnable runnable) {
+        mDispatchTimes.set(consumer, SystemClock.elapsedRealtime());
+        mExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    runnable.run();
+                } catch (RuntimeException e) {
+                    Log.e(LOG_TAG, "Error dispatching to " + CONSUMER_NAMES[consumer], e);
+                }
+            }
+        });
+    }
+}
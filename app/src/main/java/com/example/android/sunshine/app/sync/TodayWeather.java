@@ -0,0 +1,129 @@
+package com.example.android.sunshine.app.sync;
+
+import android.content.ContentValues;
+import android.content.Context;
+import android.database.Cursor;
+import android.net.Uri;
+import android.text.format.Time;
+
+import com.example.android.sunshine.app.Utility;
+import com.example.android.sunshine.app.data.WeatherContract;
+
+/**
+ * Today's weather at the preferred location, as the widgets, Muzei and the notification show it.
+ *
+ * A sync builds it from the values it just parsed and stored, so nobody reads it back from the
+ * provider, and the post-sync dispatch hands that same snapshot to all of them.  A snapshot is
+ * only handed out while it's still today's at the preferred location.
+ */
+public class TodayWeather {
+
+    private static final String[] TODAY_PROJECTION = new String[] {
+            WeatherContract.WeatherEntry.COLUMN_WEATHER_ID,
+            WeatherContract.WeatherEntry.COLUMN_MAX_TEMP,
+            WeatherContract.WeatherEntry.COLUMN_MIN_TEMP,
+            WeatherContract.WeatherEntry.COLUMN_SHORT_DESC
+    };
+
+    // these indices must match the projection
+    private static final int INDEX_WEATHER_ID = 0;
+    private static final int INDEX_MAX_TEMP = 1;
+    private static final int INDEX_MIN_TEMP = 2;
+    private static final int INDEX_SHORT_DESC = 3;
+
+    private static volatile TodayWeather sLatest;
+
+    public final String locationSetting;
+    public final int julianDay;
+    public final int weatherId;
+    // in Celsius
+    public final double maxTemp;
+    public final double minTemp;
+    public final String description;
+
+    private TodayWeather(String locationSetting, int julianDay, Cursor cursor) {
+        this.locationSetting = locationSetting;
+        this.julianDay = julianDay;
+        weatherId = cursor.getInt(INDEX_WEATHER_ID);
+        maxTemp = cursor.getDouble(INDEX_MAX_TEMP);
+        minTemp = cursor.getDouble(INDEX_MIN_TEMP);
+        description = cursor.getString(INDEX_SHORT_DESC);
+    }
+
+    private TodayWeather(String locationSetting, int julianDay, ContentValues values) {
+        this.locationSetting = locationSetting;
+        this.julianDay = julianDay;
+        weatherId = values.getAsInteger(WeatherContract.WeatherEntry.COLUMN_WEATHER_ID);
+        maxTemp = values.getAsDouble(WeatherContract.WeatherEntry.COLUMN_MAX_TEMP);
+        minTemp = values.getAsDouble(WeatherContract.WeatherEntry.COLUMN_MIN_TEMP);
+        description = values.getAsString(WeatherContract.WeatherEntry.COLUMN_SHORT_DESC);
+    }
+
+    /**
+     * @param values the parsed values of the day, as a sync stores them
+     * @return the weather of the day at the location.
+     */
+    static TodayWeather fromValues(String locationSetting, int julianDay, ContentValues values) {
+        return new TodayWeather(locationSetting, julianDay, values);
+    }
+
+    /**
+     * @return today's weather at the preferred location, or null if there's none stored.
+     */
+    public static TodayWeather get(Context context) {
+        String locationSetting = Utility.getPreferredLocation(context);
+        int julianDay = getCurrentJulianDay();
+        TodayWeather latest = sLatest;
+        if (latest != null && latest.julianDay == julianDay
+                && latest.locationSetting.equals(locationSetting)) {
+            return latest;
+        }
+        return load(context, locationSetting, julianDay);
+    }
+
+    /**
+     * Reads today's weather again, for every reader to get it from then on.
+     */
+    static TodayWeather refresh(Context context) {
+        TodayWeather today = load(context, Utility.getPreferredLocation(context),
+                getCurrentJulianDay());
+        sLatest = today;
+        return today;
+    }
+
+    /**
+     * Hands out the weather a sync just stored, for every reader to get it from then on.
+     */
+    static void publish(TodayWeather today) {
+        sLatest = today;
+    }
+
+    /**
+     * Drops the snapshot, once new weather has been stored without today's.
+     */
+    static void invalidate() {
+        sLatest = null;
+    }
+
+    private static TodayWeather load(Context context, String locationSetting, int julianDay) {
+        // The first day from today on, in case today's weather hasn't been stored
+        Uri weatherUri = WeatherContract.WeatherEntry.buildWeatherLocationWithStartDate(
+                locationSetting, System.currentTimeMillis());
+        Cursor cursor = context.getContentResolver().query(weatherUri, TODAY_PROJECTION,
+                null, null, WeatherContract.WeatherEntry.COLUMN_DATE + " ASC");
+        if (cursor == null) {
+            return null;
+        }
+        try {
+            return cursor.moveToFirst() ? new TodayWeather(locationSetting, julianDay, cursor) : null;
+        } finally {
+            cursor.close();
+        }
+    }
+
+    private static int getCurrentJulianDay() {
+        Time time = new Time();
+        time.setToNow();
+        return Time.getJulianDay(System.currentTimeMillis(), time.gmtoff);
+    }
+}
@@ -0,0 +1,349 @@
+package com.example.android.sunshine.app.wearable;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.database.Cursor;
+import android.net.Uri;
+import android.os.Handler;
+import android.os.HandlerThread;
+import android.os.Message;
+import android.text.format.Time;
+import android.util.Log;
+
+import com.example.android.sunshine.app.Utility;
+import com.example.android.sunshine.app.data.WeatherContract;
+import com.example.android.sunshine.app.sync.PostSyncDispatcher;
+import com.example.android.sunshine.shared.ForecastPayload;
+import com.google.android.gms.common.ConnectionResult;
+import com.google.android.gms.common.api.GoogleApiClient;
+import com.google.android.gms.wearable.Asset;
+import com.google.android.gms.wearable.CapabilityApi;
+import com.google.android.gms.wearable.DataApi;
+import com.google.android.gms.wearable.Node;
+import com.google.android.gms.wearable.PutDataMapRequest;
+import com.google.android.gms.wearable.Wearable;
+
+import java.nio.ByteBuffer;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * The single way from the phone to the watch face.
+ *
+ * Updates are requested from any thread, after a sync or when the watch asks for the weather,
+ * and are written by one background thread, so they never race each other.  The requests made
+ * within {@link #DEBOUNCE_MS} of the first one are coalesced into a single write of the latest
+ * forecast.  The thread keeps one GoogleApiClient connected, with blockingConnect, until it has
+ * been idle for {@link #IDLE_DISCONNECT_MS}, and writes nothing while no watch running the
+ * watch face is reachable.
+ *
+ * The DataItem of the forecast only holds the forecast, and it's only written when its content
+ * changed since the last one written, as each DataItem written is sent to the watch.  That the
+ * forecast is still up to date is told to the watch by a message of a few bytes instead.  When
+ * the watch asks for the weather, e.g. because its data was cleared, the forecast is written
+ * whatever the watch had before.
+ *
+ * A write that fails, because the client can't connect, no watch is reachable or the DataItem
+ * can't be put, is tried again later, with an exponential backoff from {@link #RETRY_INITIAL_MS}
+ * up to {@link #RETRY_MAX_MS}, until it succeeds or {@link #MAX_RETRIES} retries failed.  A new
+ * request doesn't wait for the pending retry.
+ */
+public class WearGateway {
+    private static final String TAG = "WearGateway";
+
+    // The capability the watch face declares in its wear.xml.
+    private static final String WEARABLE_CAPABILITY_NAME = "sunshine_wearable";
+
+    private static final long DEBOUNCE_MS = 2000;
+    private static final long CONNECT_TIMEOUT_SECONDS = 10;
+    private static final long REQUEST_TIMEOUT_SECONDS = 10;
+    private static final long IDLE_DISCONNECT_MS = TimeUnit.MINUTES.toMillis(1);
+    private static final long RETRY_INITIAL_MS = TimeUnit.SECONDS.toMillis(30);
+    private static final long RETRY_MAX_MS = TimeUnit.HOURS.toMillis(1);
+    private static final int MAX_RETRIES = 10;
+
+    // The days of forecast sent to the watch face, like the detail widget's.
+    private static final int FORECAST_DAYS = 14;
+
+    private static final String[] FORECAST_COLUMNS = {
+            WeatherContract.WeatherEntry.COLUMN_DATE,
+            WeatherContract.WeatherEntry.COLUMN_WEATHER_ID,
+            WeatherContract.WeatherEntry.COLUMN_MAX_TEMP,
+            WeatherContract.WeatherEntry.COLUMN_MIN_TEMP
+    };
+    // these indices must match the projection
+    private static final int INDEX_DATE = 0;
+    private static final int INDEX_WEATHER_ID = 1;
+    private static final int INDEX_MAX_TEMP = 2;
+    private static final int INDEX_MIN_TEMP = 3;
+
+    private static final String PREFS_NAME = "wear_gateway";
+    private static final String KEY_FORECAST_HASH = "forecast_hash";
+
+    private static final int MSG_SEND = 0;
+    private static final int MSG_DISCONNECT = 1;
+
+    private static WearGateway sInstance;
+
+    private final Context mContext;
+    private final GoogleApiClient mGoogleApiClient;
+    private final Handler mHandler;
+    private final SharedPreferences mPrefs;
+    // Whether the watch asked for the forecast since the last write
+    private boolean mRequired;
+    // Whether the pending MSG_SEND is a retry, rather than a request
+    private boolean mRetryPending;
+    // The failed writes in a row, only used on the gateway's thread
+    private int mRetryCount;
+
+    private final AtomicLong mSentCount = new AtomicLong();
+    private final AtomicLong mSuppressedCount = new AtomicLong();
+
+    public static synchronized WearGateway getInstance(Context context) {
+        if (sInstance == null) {
+            sInstance = new WearGateway(context.getApplicationContext());
+        }
+        return sInstance;
+    }
+
+    private WearGateway(Context context) {
+        mContext = context;
+        mPrefs = context.getSharedPreferences(PREFS_NAME, Context.MODE_PRIVATE);
+        mGoogleApiClient = new GoogleApiClient.Builder(context)
+                .addApi(Wearable.API)
+                .build();
+
+        HandlerThread thread = new HandlerThread(TAG);
+        thread.start();
+        mHandler = new Handler(thread.getLooper()) {
+            @Override
+            public void handleMessage(Message message) {
+                switch (message.what) {
+                    case MSG_SEND:
+                        synchronized (mHandler) {
+                            mRetryPending = false;
+                        }
+                        boolean sent;
+                        try {
+                            sent = send();
+                        } catch (Exception e) {
+                            Log.w(TAG, "send failed: " + e);
+                            sent = false;
+                        }
+                        if (sent) {
+                            mRetryCount = 0;
+                        } else {
+                            scheduleRetry();
+                        }
+                        sendEmptyMessageDelayed(MSG_DISCONNECT, IDLE_DISCONNECT_MS);
+                        break;
+                    case MSG_DISCONNECT:
+                        Log.d(TAG, "disconnect: idle");
+                        mGoogleApiClient.disconnect();
+                        break;
+                }
+            }
+        };
+    }
+
+    /**
+     * Sends the forecast of the preferred location to the watch, along with any update requested
+     * before it's sent.
+     */
+    public void requestUpdate() {
+        synchronized (mHandler) {
+            if (mHandler.hasMessages(MSG_SEND) && !mRetryPending) {
+                Log.d(TAG, "requestUpdate: coalesced");
+                return;
+            }
+            // the new forecast goes out now rather than with the retry
+            mHandler.removeMessages(MSG_SEND);
+            mRetryPending = false;
+            mHandler.sendEmptyMessageDelayed(MSG_SEND, DEBOUNCE_MS);
+        }
+    }
+
+    /**
+     * Sends the forecast the watch asked for, even if the forecast didn't change since the last
+     * one sent, as the watch may have lost it.
+     */
+    public void requestRequiredUpdate() {
+        synchronized (mHandler) {
+            mRequired = true;
+        }
+        requestUpdate();
+    }
+
+    /**
+     * @return how many forecasts have been written to the DataApi.
+     */
+    public long getSentCount() {
+        return mSentCount.get();
+    }
+
+    /**
+     * @return how many forecasts weren't written, since the watch already had them.
+     */
+    public long getSuppressedCount() {
+        return mSuppressedCount.get();
+    }
+
+    /**
+     * Tries the failed write again later, unless it failed too many times in a row, on the
+     * gateway's thread.
+     */
+    private void scheduleRetry() {
+        if (mRetryCount == MAX_RETRIES) {
+            Log.w(TAG, "send: giving up after " + MAX_RETRIES + " retries");
+            mRetryCount = 0;
+            return;
+        }
+        long delay = Math.min(RETRY_INITIAL_MS << mRetryCount, RETRY_MAX_MS);
+        mRetryCount++;
+        synchronized (mHandler) {
+            if (mHandler.hasMessages(MSG_SEND)) {
+                // a request came in meanwhile
+                return;
+            }
+            mRetryPending = true;
+            mHandler.sendEmptyMessageDelayed(MSG_SEND, delay);
+        }
+        Log.d(TAG, "send: retry " + mRetryCount + " in " + delay + " ms");
+    }
+
+    /**
+     * Writes the forecast, on the gateway's thread.
+     *
+     * @return false if it has to be tried again.
+     */
+    private boolean send() {
+        mHandler.removeMessages(MSG_DISCONNECT);
+        if (!mGoogleApiClient.isConnected()) {
+            ConnectionResult connectionResult =
+                    mGoogleApiClient.blockingConnect(CONNECT_TIMEOUT_SECONDS, TimeUnit.SECONDS);
+            if (!connectionResult.isSuccess()) {
+                Log.w(TAG, "send: can't connect, " + connectionResult);
+                return false;
+            }
+        }
+
+        CapabilityApi.GetCapabilityResult capabilityResult = Wearable.CapabilityApi
+                .getCapability(mGoogleApiClient, WEARABLE_CAPABILITY_NAME, CapabilityApi.FILTER_REACHABLE)
+                .await(REQUEST_TIMEOUT_SECONDS, TimeUnit.SECONDS);
+        if (!capabilityResult.getStatus().isSuccess()
+                || capabilityResult.getCapability().getNodes().isEmpty()) {
+            Log.d(TAG, "send: no watch reachable, " + capabilityResult.getStatus());
+            return false;
+        }
+
+        byte[] payload = buildForecastPayload();
+        if (payload == null) {
+            // nothing to send until the next sync
+            return true;
+        }
+        boolean required;
+        synchronized (mHandler) {
+            required = mRequired;
+            mRequired = false;
+        }
+        String hash = hash(payload);
+        if (!required && hash.equals(mPrefs.getString(KEY_FORECAST_HASH, null))) {
+            mSuppressedCount.incrementAndGet();
+        } else {
+            PutDataMapRequest putDataMapRequest =
+                    PutDataMapRequest.create(UpdateSunshineWatchFaceService.PATH_WEATHER_INFO);
+            putDataMapRequest.getDataMap().putAsset(UpdateSunshineWatchFaceService.KEY_WEATHER_FORECAST,
+                    Asset.createFromBytes(payload));
+            if (required) {
+                // A DataItem identical to the current one isn't sent again
+                putDataMapRequest.getDataMap().putLong(
+                        UpdateSunshineWatchFaceService.KEY_WEATHER_REQUIRED_TIME,
+                        System.currentTimeMillis());
+            }
+            DataApi.DataItemResult dataItemResult = Wearable.DataApi
+                    .putDataItem(mGoogleApiClient, putDataMapRequest.asPutDataRequest())
+                    .await(REQUEST_TIMEOUT_SECONDS, TimeUnit.SECONDS);
+            if (!dataItemResult.getStatus().isSuccess()) {
+                Log.w(TAG, "send: " + dataItemResult.getStatus());
+                synchronized (mHandler) {
+                    mRequired |= required;
+                }
+                return false;
+            }
+            mPrefs.edit().putString(KEY_FORECAST_HASH, hash).apply();
+            mSentCount.incrementAndGet();
+        }
+        Log.d(TAG, "send: " + mSentCount.get() + " sent, " + mSuppressedCount.get() + " suppressed");
+
+        // Either way, the forecast the watch has is the latest one
+        byte[] updateTime = ByteBuffer.allocate(8).putLong(System.currentTimeMillis()).array();
+        for (Node node : capabilityResult.getCapability().getNodes()) {
+            Wearable.MessageApi.sendMessage(mGoogleApiClient, node.getId(),
+                    UpdateSunshineWatchFaceService.PATH_WEATHER_UPDATE_TIME, updateTime)
+                    .await(REQUEST_TIMEOUT_SECONDS, TimeUnit.SECONDS);
+        }
+        PostSyncDispatcher.getInstance(mContext)
+                .reportCompletion(PostSyncDispatcher.CONSUMER_WEARABLES);
+        return true;
+    }
+
+    /**
+     * @return a digest of the payload, as hex.
+     */
+    private static String hash(byte[] payload) {
+        MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance("SHA-1");
+        } catch (NoSuchAlgorithmException e) {
+            // every Android device has SHA-1, but the payload itself will do
+            return Arrays.toString(payload);
+        }
+        byte[] bytes = digest.digest(payload);
+        StringBuilder hex = new StringBuilder(bytes.length * 2);
+        for (byte b : bytes) {
+            hex.append(Character.forDigit((b >> 4) & 0xF, 16))
+                    .append(Character.forDigit(b & 0xF, 16));
+        }
+        return hex.toString();
+    }
+
+    /**
+     * @return the payload of the forecast from today on, or null if there's none.
+     */
+    private byte[] buildForecastPayload() {
+        // Get the forecast from today on from the ContentProvider
+        String location = Utility.getPreferredLocation(mContext);
+        Uri weatherForLocationUri = WeatherContract.WeatherEntry.buildWeatherLocationWithStartDate(
+                location, System.currentTimeMillis());
+        Cursor data = mContext.getContentResolver().query(weatherForLocationUri, FORECAST_COLUMNS, null,
+                null, WeatherContract.WeatherEntry.COLUMN_DATE + " ASC");
+        if (data == null) {
+            return null;
+        }
+        if (!data.moveToFirst()) {
+            data.close();
+            return null;
+        }
+
+        // Encode the raw values, so that the watch face formats them by itself
+        int dayCount = Math.min(data.getCount(), FORECAST_DAYS);
+        Time dayTime = new Time();
+        ForecastPayload.Encoder payload = null;
+        for (int i = 0; i < dayCount; i++, data.moveToNext()) {
+            long date = data.getLong(INDEX_DATE);
+            dayTime.set(date);
+            int julianDay = Time.getJulianDay(date, dayTime.gmtoff);
+            if (payload == null) {
+                payload = new ForecastPayload.Encoder(Utility.isMetric(mContext), julianDay, dayCount);
+            }
+            payload.addDay(julianDay, data.getInt(INDEX_WEATHER_ID),
+                    data.getDouble(INDEX_MAX_TEMP), data.getDouble(INDEX_MIN_TEMP));
+        }
+        data.close();
+
+        return payload.toByteArray();
+    }
+}
@@ -7,18 +7,17 @@ import android.graphics.Bitmap;
 import android.net.Uri;
 import android.os.Binder;
 import android.os.Build;
-import android.util.Log;
 import android.widget.AdapterView;
 import android.widget.RemoteViews;
 import android.widget.RemoteViewsService;
 
-import com.bumptech.glide.Glide;
-import com.bumptech.glide.request.target.Target;
 import com.example.android.sunshine.app.R;
+import com.example.android.sunshine.app.SunshineSettings;
 import com.example.android.sunshine.app.Utility;
 import com.example.android.sunshine.app.data.WeatherContract;
 
-import java.util.concurrent.ExecutionException;
+import java.util.HashSet;
+import java.util.Set;
 
 /**
  * RemoteViewsService controlling the data being shown in the scrollable weather detail widget
@@ -46,10 +45,11 @@ public class DetailWidgetRemoteViewsService extends RemoteViewsService {
     public RemoteViewsFactory onGetViewFactory(Intent intent) {
         return new RemoteViewsFactory() {
             private Cursor data = null;
+            private int iconSize;
 
             @Override
             public void onCreate() {
-                // Nothing to do
+                iconSize = getResources().getDimensionPixelSize(R.dimen.list_icon);
             }
 
             @Override
@@ -71,6 +71,17 @@ public class DetailWidgetRemoteViewsService extends RemoteViewsService {
                         null,
                         WeatherContract.WeatherEntry.COLUMN_DATE + " ASC");
                 Binder.restoreCallingIdentity(identityToken);
+
+                // Fetch the art of every row now, in parallel, so that getViewAt doesn't have to
+                // fetch it one row at a time
+                SunshineSettings settings = SunshineSettings.get(DetailWidgetRemoteViewsService.this);
+                if (data != null && !settings.usingLocalGraphics) {
+                    Set<String> artUrls = new HashSet<String>();
+                    for (int i = 0; data.moveToPosition(i); i++) {
+                        artUrls.add(settings.getArtUrl(data.getInt(INDEX_WEATHER_CONDITION_ID)));
+                    }
+                    WidgetArtCache.prefetch(DetailWidgetRemoteViewsService.this, artUrls, iconSize);
+                }
             }
 
             @Override
@@ -97,17 +108,12 @@ public class DetailWidgetRemoteViewsService extends RemoteViewsService {
                 int weatherId = data.getInt(INDEX_WEATHER_CONDITION_ID);
                 int weatherArtResourceId = Utility.getIconResourceForWeatherCondition(weatherId);
                 Bitmap weatherArtImage = null;
-                if ( !Utility.usingLocalGraphics(DetailWidgetRemoteViewsService.this) ) {
-                    String weatherArtResourceUrl = Utility.getArtUrlForWeatherCondition(
-                            DetailWidgetRemoteViewsService.this, weatherId);
-                    try {
-                        weatherArtImage = Glide.with(DetailWidgetRemoteViewsService.this)
-                                .load(weatherArtResourceUrl)
-                                .asBitmap()
-                                .error(weatherArtResourceId)
-                                .into(Target.SIZE_ORIGINAL, Target.SIZE_ORIGINAL).get();
-                    } catch (InterruptedException | ExecutionException e) {
-                        Log.e(LOG_TAG, "Error retrieving large icon from " + weatherArtResourceUrl, e);
+                SunshineSettings settings = SunshineSettings.get(DetailWidgetRemoteViewsService.this);
+                if ( !settings.usingLocalGraphics ) {
+                    // prefetched by onDataSetChanged, unless it couldn't be fetched
+                    String weatherArtResourceUrl = settings.getArtUrl(weatherId);
+                    if (weatherArtResourceUrl != null) {
+                        weatherArtImage = WidgetArtCache.get(weatherArtResourceUrl, iconSize);
                     }
                 }
                 String description = data.getString(INDEX_WEATHER_DESC);
@@ -116,10 +122,10 @@ public class DetailWidgetRemoteViewsService extends RemoteViewsService {
                         DetailWidgetRemoteViewsService.this, dateInMillis, false);
                 double maxTemp = data.getDouble(INDEX_WEATHER_MAX_TEMP);
                 double minTemp = data.getDouble(INDEX_WEATHER_MIN_TEMP);
-                String formattedMaxTemperature =
-                        Utility.formatTemperature(DetailWidgetRemoteViewsService.this, maxTemp);
-                String formattedMinTemperature =
-                        Utility.formatTemperature(DetailWidgetRemoteViewsService.this, minTemp);
+                String formattedMaxTemperature = Utility.formatTemperature(
+                        DetailWidgetRemoteViewsService.this, maxTemp, settings.isMetric);
+                String formattedMinTemperature = Utility.formatTemperature(
+                        DetailWidgetRemoteViewsService.this, minTemp, settings.isMetric);
                 if (weatherArtImage != null) {
                     views.setImageViewBitmap(R.id.widget_icon, weatherArtImage);
                 } else {
@@ -134,10 +140,8 @@ public class DetailWidgetRemoteViewsService extends RemoteViewsService {
                 views.setTextViewText(R.id.widget_low_temperature, formattedMinTemperature);
 
                 final Intent fillInIntent = new Intent();
-                String locationSetting =
-                        Utility.getPreferredLocation(DetailWidgetRemoteViewsService.this);
                 Uri weatherUri = WeatherContract.WeatherEntry.buildWeatherLocationWithDate(
-                        locationSetting,
+                        settings.location,
                         dateInMillis);
                 fillInIntent.setData(weatherUri);
                 views.setOnClickFillInIntent(R.id.widget_list_item, fillInIntent);
@@ -20,85 +20,147 @@ import android.app.IntentService;
 import android.app.PendingIntent;
 import android.appwidget.AppWidgetManager;
 import android.content.ComponentName;
+import android.content.Context;
 import android.content.Intent;
-import android.database.Cursor;
-import android.net.Uri;
 import android.os.Build;
 import android.os.Bundle;
 import android.util.DisplayMetrics;
+import android.util.Log;
+import android.util.SparseArray;
 import android.util.TypedValue;
 import android.widget.RemoteViews;
 
 import com.example.android.sunshine.app.MainActivity;
 import com.example.android.sunshine.app.R;
 import com.example.android.sunshine.app.Utility;
-import com.example.android.sunshine.app.data.WeatherContract;
+import com.example.android.sunshine.app.sync.PostSyncDispatcher;
+import com.example.android.sunshine.app.sync.TodayWeather;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 /**
  * IntentService which handles updating all Today widgets with the latest data
+ *
+ * The requests made before the service gets to them are coalesced into a single update, and an
+ * update only pushes RemoteViews to the widgets whose layout or content changed since they were
+ * last rendered, each layout being rendered once for all the widgets using it.
  */
 public class TodayWidgetIntentService extends IntentService {
-    private static final String[] FORECAST_COLUMNS = {
-            WeatherContract.WeatherEntry.COLUMN_WEATHER_ID,
-            WeatherContract.WeatherEntry.COLUMN_SHORT_DESC,
-            WeatherContract.WeatherEntry.COLUMN_MAX_TEMP,
-            WeatherContract.WeatherEntry.COLUMN_MIN_TEMP
-    };
-    // these indices must match the projection
-    private static final int INDEX_WEATHER_ID = 0;
-    private static final int INDEX_SHORT_DESC = 1;
-    private static final int INDEX_MAX_TEMP = 2;
-    private static final int INDEX_MIN_TEMP = 3;
+    private static final String LOG_TAG = TodayWidgetIntentService.class.getSimpleName();
+
+    // The state each widget was last rendered in: its layout and what it shows
+    private static final SparseArray<String> sRenderedStates = new SparseArray<String>();
+
+    private static final AtomicBoolean sUpdatePending = new AtomicBoolean();
 
     public TodayWidgetIntentService() {
         super("TodayWidgetIntentService");
     }
 
+    /**
+     * Updates the Today widgets, along with any update requested before this one is handled.
+     */
+    public static void requestUpdate(Context context) {
+        if (sUpdatePending.compareAndSet(false, true)) {
+            context.startService(new Intent(context, TodayWidgetIntentService.class));
+        } else {
+            Log.d(LOG_TAG, "requestUpdate: coalesced");
+        }
+    }
+
+    /**
+     * Makes the next update render these widgets even if what they show hasn't changed.
+     */
+    static void invalidate(int[] appWidgetIds) {
+        synchronized (sRenderedStates) {
+            for (int appWidgetId : appWidgetIds) {
+                sRenderedStates.delete(appWidgetId);
+            }
+        }
+    }
+
     @Override
     protected void onHandleIntent(Intent intent) {
+        // Requests made from now on need another update, as they may come with new data
+        sUpdatePending.set(false);
+        updateWidgets();
+        PostSyncDispatcher.getInstance(this).reportCompletion(PostSyncDispatcher.CONSUMER_WIDGETS);
+    }
+
+    /**
+     * Renders the Today widgets whose layout or content changed since they were last rendered.
+     */
+    private void updateWidgets() {
         // Retrieve all of the Today widget ids: these are the widgets we need to update
         AppWidgetManager appWidgetManager = AppWidgetManager.getInstance(this);
         int[] appWidgetIds = appWidgetManager.getAppWidgetIds(new ComponentName(this,
                 TodayWidgetProvider.class));
 
-        // Get today's data from the ContentProvider
-        String location = Utility.getPreferredLocation(this);
-        Uri weatherForLocationUri = WeatherContract.WeatherEntry.buildWeatherLocationWithStartDate(
-                location, System.currentTimeMillis());
-        Cursor data = getContentResolver().query(weatherForLocationUri, FORECAST_COLUMNS, null,
-                null, WeatherContract.WeatherEntry.COLUMN_DATE + " ASC");
-        if (data == null) {
+        // Get today's data, as the last sync dispatched it or from the ContentProvider
+        TodayWeather today = TodayWeather.get(this);
+        if (today == null) {
             return;
         }
-        if (!data.moveToFirst()) {
-            data.close();
+        int weatherArtResourceId = Utility.getArtResourceForWeatherCondition(today.weatherId);
+        String description = today.description;
+        boolean isMetric = Utility.isMetric(this);
+        String formattedMaxTemperature = Utility.formatTemperature(this, today.maxTemp, isMetric);
+        String formattedMinTemperature = Utility.formatTemperature(this, today.minTemp, isMetric);
+
+        // What the widgets show, formatted, so that it only changes when they'd look different
+        String content = weatherArtResourceId + "|" + description + "|"
+                + formattedMaxTemperature + "|" + formattedMinTemperature;
+
+        // Find the widgets whose layout or content changed, by layout
+        int defaultWidth = getResources().getDimensionPixelSize(R.dimen.widget_today_default_width);
+        int largeWidth = getResources().getDimensionPixelSize(R.dimen.widget_today_large_width);
+        SparseArray<List<Integer>> changedIdsByLayout = new SparseArray<List<Integer>>();
+        synchronized (sRenderedStates) {
+            SparseArray<String> renderedStates = new SparseArray<String>(appWidgetIds.length);
+            for (int appWidgetId : appWidgetIds) {
+                // Find the correct layout based on the widget's width
+                int widgetWidth = getWidgetWidth(appWidgetManager, appWidgetId);
+                int layoutId;
+                if (widgetWidth >= largeWidth) {
+                    layoutId = R.layout.widget_today_large;
+                } else if (widgetWidth >= defaultWidth) {
+                    layoutId = R.layout.widget_today;
+                } else {
+                    layoutId = R.layout.widget_today_small;
+                }
+
+                String state = layoutId + "|" + content;
+                renderedStates.put(appWidgetId, state);
+                if (!state.equals(sRenderedStates.get(appWidgetId))) {
+                    List<Integer> changedIds = changedIdsByLayout.get(layoutId);
+                    if (changedIds == null) {
+                        changedIds = new ArrayList<Integer>();
+                        changedIdsByLayout.put(layoutId, changedIds);
+                    }
+                    changedIds.add(appWidgetId);
+                }
+            }
+
+            // Keeping only the current widgets forgets the ones that have been removed
+            sRenderedStates.clear();
+            for (int i = 0; i < renderedStates.size(); i++) {
+                sRenderedStates.put(renderedStates.keyAt(i), renderedStates.valueAt(i));
+            }
+        }
+        if (changedIdsByLayout.size() == 0) {
+            Log.d(LOG_TAG, "onHandleIntent: " + appWidgetIds.length + " widgets unchanged");
             return;
         }
 
-        // Extract the weather data from the Cursor
-        int weatherId = data.getInt(INDEX_WEATHER_ID);
-        int weatherArtResourceId = Utility.getArtResourceForWeatherCondition(weatherId);
-        String description = data.getString(INDEX_SHORT_DESC);
-        double maxTemp = data.getDouble(INDEX_MAX_TEMP);
-        double minTemp = data.getDouble(INDEX_MIN_TEMP);
-        String formattedMaxTemperature = Utility.formatTemperature(this, maxTemp);
-        String formattedMinTemperature = Utility.formatTemperature(this, minTemp);
-        data.close();
-
-        // Perform this loop procedure for each Today widget
-        for (int appWidgetId : appWidgetIds) {
-            // Find the correct layout based on the widget's width
-            int widgetWidth = getWidgetWidth(appWidgetManager, appWidgetId);
-            int defaultWidth = getResources().getDimensionPixelSize(R.dimen.widget_today_default_width);
-            int largeWidth = getResources().getDimensionPixelSize(R.dimen.widget_today_large_width);
-            int layoutId;
-            if (widgetWidth >= largeWidth) {
-                layoutId = R.layout.widget_today_large;
-            } else if (widgetWidth >= defaultWidth) {
-                layoutId = R.layout.widget_today;
-            } else {
-                layoutId = R.layout.widget_today_small;
-            }
+        // Create an Intent to launch MainActivity
+        Intent launchIntent = new Intent(this, MainActivity.class);
+        PendingIntent pendingIntent = PendingIntent.getActivity(this, 0, launchIntent, 0);
+
+        // Render each layout once, for all the widgets using it
+        for (int i = 0; i < changedIdsByLayout.size(); i++) {
+            int layoutId = changedIdsByLayout.keyAt(i);
             RemoteViews views = new RemoteViews(getPackageName(), layoutId);
 
             // Add the data to the RemoteViews
@@ -110,14 +172,15 @@ public class TodayWidgetIntentService extends IntentService {
             views.setTextViewText(R.id.widget_description, description);
             views.setTextViewText(R.id.widget_high_temperature, formattedMaxTemperature);
             views.setTextViewText(R.id.widget_low_temperature, formattedMinTemperature);
-
-            // Create an Intent to launch MainActivity
-            Intent launchIntent = new Intent(this, MainActivity.class);
-            PendingIntent pendingIntent = PendingIntent.getActivity(this, 0, launchIntent, 0);
             views.setOnClickPendingIntent(R.id.widget, pendingIntent);
 
-            // Tell the AppWidgetManager to perform an update on the current app widget
-            appWidgetManager.updateAppWidget(appWidgetId, views);
+            // Tell the AppWidgetManager to perform an update on these app widgets
+            List<Integer> changedIds = changedIdsByLayout.valueAt(i);
+            int[] ids = new int[changedIds.size()];
+            for (int j = 0; j < ids.length; j++) {
+                ids[j] = changedIds.get(j);
+            }
+            appWidgetManager.updateAppWidget(ids, views);
         }
     }
 
@@ -0,0 +1,87 @@
+package com.example.android.sunshine.app.widget;
+
+import android.content.Context;
+import android.graphics.Bitmap;
+import android.support.v4.util.LruCache;
+import android.util.Log;
+
+import com.bumptech.glide.Glide;
+import com.bumptech.glide.request.FutureTarget;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * The art of the art packs, at the size the widgets draw it, shared by every widget.
+ *
+ * A widget fetches all the art its rows need at once when its data changes, so that the images
+ * download and decode in parallel on Glide's threads, and then builds its rows from the cache
+ * only.  An entry is keyed by its art URL, which is the art pack and the kind of art, and by its
+ * size, so the weather ids sharing an image share an entry.  The cache is bounded by the bytes of
+ * its bitmaps.
+ */
+class WidgetArtCache {
+    private static final String LOG_TAG = WidgetArtCache.class.getSimpleName();
+
+    // Plenty for every kind of art of two art packs at list icon size
+    private static final int MAX_BYTES = 2 * 1024 * 1024;
+
+    // How long a widget waits for the whole batch of art
+    private static final long FETCH_TIMEOUT_SECONDS = 30;
+
+    private static final LruCache<String, Bitmap> sCache = new LruCache<String, Bitmap>(MAX_BYTES) {
+        @Override
+        protected int sizeOf(String key, Bitmap bitmap) {
+            return bitmap.getRowBytes() * bitmap.getHeight();
+        }
+    };
+
+    private WidgetArtCache() {
+    }
+
+    private static String getKey(String artUrl, int size) {
+        return size + ":" + artUrl;
+    }
+
+    /**
+     * @return the art at this size, or null if it isn't cached.
+     */
+    static Bitmap get(String artUrl, int size) {
+        return sCache.get(getKey(artUrl, size));
+    }
+
+    /**
+     * Fetches the art that isn't cached yet, all at once, and waits for it.  Art that can't be
+     * fetched is left out, for the widget to fall back to its local graphics.  Must not be called
+     * on the main thread.
+     */
+    static void prefetch(Context context, Collection<String> artUrls, int size) {
+        List<String> fetchedUrls = new ArrayList<String>(artUrls.size());
+        List<FutureTarget<Bitmap>> targets = new ArrayList<FutureTarget<Bitmap>>(artUrls.size());
+        for (String artUrl : artUrls) {
+            if (artUrl != null && get(artUrl, size) == null) {
+                fetchedUrls.add(artUrl);
+                targets.add(Glide.with(context)
+                        .load(artUrl)
+                        .asBitmap()
+                        .into(size, size));
+            }
+        }
+
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(FETCH_TIMEOUT_SECONDS);
+        for (int i = 0; i < targets.size(); i++) {
+            String artUrl = fetchedUrls.get(i);
+            try {
+                long timeout = Math.max(0, deadline - System.nanoTime());
+                sCache.put(getKey(artUrl, size), targets.get(i).get(timeout, TimeUnit.NANOSECONDS));
+            } catch (InterruptedException | ExecutionException | TimeoutException e) {
+                Log.e(LOG_TAG, "Error retrieving large icon from " + artUrl, e);
+                targets.get(i).cancel(true);
+            }
+        }
+    }
+}
@@ -0,0 +1,109 @@
+package com.example.android.sunshine.shared;
+
+import android.test.AndroidTestCase;
+
+import java.io.IOException;
+import java.util.Arrays;
+
+/*
+    Encodes a known forecast into the exact bytes of the format, decodes those bytes, and checks
+    that the encoder and the decoder agree on forecasts of any sign.
+ */
+public class TestForecastPayload extends AndroidTestCase {
+
+    // Two days from Julian day 2457404, in Celsius: 800, 21.5 / 8.0 then 500, 20.0 / 8.5
+    static private final byte[] TEST_PAYLOAD = {
+            (byte) 0x01, (byte) 0x01, (byte) 0xBC, (byte) 0xFE, (byte) 0x95, (byte) 0x01, (byte) 0x02,
+            (byte) 0x00, (byte) 0xC0, (byte) 0x0C, (byte) 0xAE, (byte) 0x03, (byte) 0xA0, (byte) 0x01,
+            (byte) 0x02, (byte) 0xD7, (byte) 0x04, (byte) 0x1D, (byte) 0x0A
+    };
+
+    static private final int TEST_JULIAN_DAY = 2457404;
+
+    public void testEncode() {
+        ForecastPayload.Encoder encoder = new ForecastPayload.Encoder(true, TEST_JULIAN_DAY, 2);
+        encoder.addDay(TEST_JULIAN_DAY, 800, 21.5, 8.0);
+        // the weather id and max temperature go down: negative differences
+        encoder.addDay(TEST_JULIAN_DAY + 1, 500, 20.0, 8.5);
+        assertTrue("Error: the forecast isn't encoded as expected",
+                Arrays.equals(TEST_PAYLOAD, encoder.toByteArray()));
+    }
+
+    public void testEncodeDecodeNegativeTemperatures() throws IOException {
+        ForecastPayload.Encoder encoder = new ForecastPayload.Encoder(false, TEST_JULIAN_DAY, 3);
+        encoder.addDay(TEST_JULIAN_DAY, 600, -12.3, -20.0);
+        encoder.addDay(TEST_JULIAN_DAY + 1, 601, 3.5, -1.5);
+        encoder.addDay(TEST_JULIAN_DAY + 2, 200, -40.0, -45.6);
+        ForecastPayload forecast = ForecastPayload.decode(encoder.toByteArray());
+
+        assertFalse(forecast.isMetric);
+        assertEquals(3, forecast.getDayCount());
+        assertEquals(2, forecast.indexOfDay(TEST_JULIAN_DAY + 2));
+        assertEquals(200, forecast.weatherIds[2]);
+        assertEquals(-12.3, forecast.maxTemps[0], 0.001);
+        assertEquals(-1.5, forecast.minTemps[1], 0.001);
+        assertEquals(-40.0, forecast.maxTemps[2], 0.001);
+        assertEquals(-45.6, forecast.minTemps[2], 0.001);
+    }
+
+    public void testEncodeRejectsExtraDay() {
+        ForecastPayload.Encoder encoder = new ForecastPayload.Encoder(true, TEST_JULIAN_DAY, 1);
+        encoder.addDay(TEST_JULIAN_DAY, 800, 21.5, 8.0);
+        try {
+            encoder.addDay(TEST_JULIAN_DAY + 1, 500, 20.0, 8.5);
+            fail("Error: a day was added past the day count");
+        } catch (IllegalStateException e) {
+            // expected
+        }
+    }
+
+    public void testEncodeRejectsMissingDay() {
+        ForecastPayload.Encoder encoder = new ForecastPayload.Encoder(true, TEST_JULIAN_DAY, 2);
+        encoder.addDay(TEST_JULIAN_DAY, 800, 21.5, 8.0);
+        try {
+            encoder.toByteArray();
+            fail("Error: a payload missing a day was encoded");
+        } catch (IllegalStateException e) {
+            // expected
+        }
+    }
+
+    public void testDecode() throws IOException {
+        ForecastPayload forecast = ForecastPayload.decode(TEST_PAYLOAD);
+
+        assertTrue(forecast.isMetric);
+        assertEquals(2, forecast.getDayCount());
+        assertEquals(0, forecast.indexOfDay(TEST_JULIAN_DAY));
+        assertEquals(1, forecast.indexOfDay(TEST_JULIAN_DAY + 1));
+        assertEquals(-1, forecast.indexOfDay(TEST_JULIAN_DAY + 2));
+
+        assertEquals(800, forecast.weatherIds[0]);
+        assertEquals(21.5, forecast.maxTemps[0], 0.001);
+        assertEquals(8.0, forecast.minTemps[0], 0.001);
+        assertEquals(500, forecast.weatherIds[1]);
+        assertEquals(20.0, forecast.maxTemps[1], 0.001);
+        assertEquals(8.5, forecast.minTemps[1], 0.001);
+    }
+
+    public void testDecodeRejectsTruncatedPayload() {
+        byte[] truncated = new byte[TEST_PAYLOAD.length - 1];
+        System.arraycopy(TEST_PAYLOAD, 0, truncated, 0, truncated.length);
+        try {
+            ForecastPayload.decode(truncated);
+            fail("Error: a truncated payload was decoded");
+        } catch (IOException e) {
+            // expected
+        }
+    }
+
+    public void testDecodeRejectsUnknownVersion() {
+        byte[] payload = TEST_PAYLOAD.clone();
+        payload[0] = ForecastPayload.VERSION + 1;
+        try {
+            ForecastPayload.decode(payload);
+            fail("Error: a payload of an unknown version was decoded");
+        } catch (IOException e) {
+            // expected
+        }
+    }
+}
@@ -0,0 +1,127 @@
+package com.example.android.sunshine.shared;
+
+import android.test.AndroidTestCase;
+import android.util.Log;
+
+import java.util.Locale;
+
+/*
+    Checks the tables of WeatherConditions against the chain of range checks they replace, then
+    measures a lookup of both.  The ns per lookup of both are logged under the
+    TestWeatherConditions tag.
+ */
+public class TestWeatherConditions extends AndroidTestCase {
+
+    public static final String LOG_TAG = TestWeatherConditions.class.getSimpleName();
+
+    static private final String TEST_ART_PACK = "https://example.com/%s.png";
+
+    // Every id of the tables, and some on both sides of them.
+    static private final int FIRST_TEST_ID = 0;
+    static private final int LAST_TEST_ID = 1000;
+
+    static private final int LOOKUP_ROUNDS = 1000;
+
+    public void testTablesMatchRangeChecks() {
+        for (int id = FIRST_TEST_ID; id <= LAST_TEST_ID; id++) {
+            String artName = getArtNameWithRangeChecks(id);
+            int art = WeatherConditions.getArt(id);
+            if (artName == null) {
+                assertEquals("Error: id " + id + " has art", WeatherConditions.ART_NONE, art);
+            } else {
+                assertEquals("Error: wrong art for id " + id, artName, WeatherConditions.getArtName(art));
+            }
+            assertEquals("Error: wrong image for id " + id,
+                    getImageUrlWithRangeChecks(id), WeatherConditions.getImageUrl(id));
+        }
+    }
+
+    public void testLookupTime() {
+        int idCount = LAST_TEST_ID - FIRST_TEST_ID + 1;
+        int lookupCount = idCount * LOOKUP_ROUNDS;
+
+        // What the art url of a row used to cost
+        long start = System.nanoTime();
+        int found = 0;
+        for (int round = 0; round < LOOKUP_ROUNDS; round++) {
+            for (int id = FIRST_TEST_ID; id <= LAST_TEST_ID; id++) {
+                String artName = getArtNameWithRangeChecks(id);
+                if (artName != null && String.format(Locale.US, TEST_ART_PACK, artName) != null) {
+                    found++;
+                }
+            }
+        }
+        long beforeNanos = System.nanoTime() - start;
+
+        start = System.nanoTime();
+        int foundInTable = 0;
+        for (int round = 0; round < LOOKUP_ROUNDS; round++) {
+            for (int id = FIRST_TEST_ID; id <= LAST_TEST_ID; id++) {
+                if (WeatherConditions.getArt(id) != WeatherConditions.ART_NONE) {
+                    foundInTable++;
+                }
+            }
+        }
+        long afterNanos = System.nanoTime() - start;
+
+        assertEquals("Error: the table doesn't find the same art", found, foundInTable);
+        Log.i(LOG_TAG, lookupCount + " lookups: before " + (beforeNanos / lookupCount)
+                + " ns each, after " + (afterNanos / lookupCount) + " ns each");
+    }
+
+    // How Utility used to find the art of a weather condition id.
+    private static String getArtNameWithRangeChecks(int weatherId) {
+        if (weatherId >= 200 && weatherId <= 232) {
+            return "storm";
+        } else if (weatherId >= 300 && weatherId <= 321) {
+            return "light_rain";
+        } else if (weatherId >= 500 && weatherId <= 504) {
+            return "rain";
+        } else if (weatherId == 511) {
+            return "snow";
+        } else if (weatherId >= 520 && weatherId <= 531) {
+            return "rain";
+        } else if (weatherId >= 600 && weatherId <= 622) {
+            return "snow";
+        } else if (weatherId >= 701 && weatherId <= 761) {
+            return "fog";
+        } else if (weatherId == 761 || weatherId == 781) {
+            return "storm";
+        } else if (weatherId == 800) {
+            return "clear";
+        } else if (weatherId == 801) {
+            return "light_clouds";
+        } else if (weatherId >= 802 && weatherId <= 804) {
+            return "clouds";
+        }
+        return null;
+    }
+
+    // How Utility used to find the image of a weather condition id.
+    private static String getImageUrlWithRangeChecks(int weatherId) {
+        if (weatherId >= 200 && weatherId <= 232) {
+            return "http://upload.wikimedia.org/wikipedia/commons/2/28/Thunderstorm_in_Annemasse,_France.jpg";
+        } else if (weatherId >= 300 && weatherId <= 321) {
+            return "http://upload.wikimedia.org/wikipedia/commons/a/a0/Rain_on_leaf_504605006.jpg";
+        } else if (weatherId >= 500 && weatherId <= 504) {
+            return "http://upload.wikimedia.org/wikipedia/commons/6/6c/Rain-on-Thassos.jpg";
+        } else if (weatherId == 511) {
+            return "http://upload.wikimedia.org/wikipedia/commons/b/b8/Fresh_snow.JPG";
+        } else if (weatherId >= 520 && weatherId <= 531) {
+            return "http://upload.wikimedia.org/wikipedia/commons/6/6c/Rain-on-Thassos.jpg";
+        } else if (weatherId >= 600 && weatherId <= 622) {
+            return "http://upload.wikimedia.org/wikipedia/commons/b/b8/Fresh_snow.JPG";
+        } else if (weatherId >= 701 && weatherId <= 761) {
+            return "http://upload.wikimedia.org/wikipedia/commons/e/e6/Westminster_fog_-_London_-_UK.jpg";
+        } else if (weatherId == 761 || weatherId == 781) {
+            return "http://upload.wikimedia.org/wikipedia/commons/d/dc/Raised_dust_ahead_of_a_severe_thunderstorm_1.jpg";
+        } else if (weatherId == 800) {
+            return "http://upload.wikimedia.org/wikipedia/commons/7/7e/A_few_trees_and_the_sun_(6009964513).jpg";
+        } else if (weatherId == 801) {
+            return "http://upload.wikimedia.org/wikipedia/commons/e/e7/Cloudy_Blue_Sky_(5031259890).jpg";
+        } else if (weatherId >= 802 && weatherId <= 804) {
+            return "http://upload.wikimedia.org/wikipedia/commons/5/54/Cloudy_hills_in_Elis,_Greece_2.jpg";
+        }
+        return null;
+    }
+}
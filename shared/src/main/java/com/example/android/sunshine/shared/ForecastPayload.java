@@ -0,0 +1,191 @@
+package com.example.android.sunshine.shared;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+
+/**
+ * The forecast the phone sends to the watch face as a single Asset, decoded, along with its
+ * {@link Encoder}.
+ *
+ * The payload is made of:
+ * - the format version, on one byte;
+ * - flags, on one byte: {@link #FLAG_METRIC} if the temperatures are to be shown in Celsius;
+ * - the Julian day of the first day, then the number of days;
+ * - for each day, the difference with the previous day (or with the first day, for the first
+ *   one) of its Julian day, its weather id, and its max and min temperatures in tenths of a
+ *   degree Celsius.
+ * Every number is a variable-length integer, 7 bits per byte, and the differences are
+ * zigzag-encoded so that small negative ones stay short.  A 14-day forecast takes about 70
+ * bytes.
+ *
+ * The app and the watch face share this class, so the format only changes in one place, along
+ * with {@link #VERSION}.
+ */
+public class ForecastPayload {
+
+    public static final int VERSION = 1;
+
+    public static final int FLAG_METRIC = 1;
+
+    public final boolean isMetric;
+    public final int[] julianDays;
+    public final int[] weatherIds;
+    // in Celsius
+    public final double[] maxTemps;
+    public final double[] minTemps;
+
+    private ForecastPayload(boolean isMetric, int dayCount) {
+        this.isMetric = isMetric;
+        julianDays = new int[dayCount];
+        weatherIds = new int[dayCount];
+        maxTemps = new double[dayCount];
+        minTemps = new double[dayCount];
+    }
+
+    public int getDayCount() {
+        return julianDays.length;
+    }
+
+    /**
+     * @return the index of the day, or -1 if the forecast doesn't cover it.
+     */
+    public int indexOfDay(int julianDay) {
+        for (int i = 0; i < julianDays.length; i++) {
+            if (julianDays[i] == julianDay) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * @throws IOException if the payload is truncated or of a version this watch face can't read.
+     */
+    public static ForecastPayload decode(byte[] bytes) throws IOException {
+        Reader reader = new Reader(bytes);
+        int version = reader.readByte();
+        if (version != VERSION) {
+            throw new IOException("Unknown forecast payload version " + version);
+        }
+        int flags = reader.readByte();
+        int julianDay = reader.readVarInt();
+        int dayCount = reader.readVarInt();
+        if (dayCount < 0 || dayCount > bytes.length) {
+            throw new IOException("Invalid forecast day count " + dayCount);
+        }
+
+        ForecastPayload payload = new ForecastPayload((flags & FLAG_METRIC) != 0, dayCount);
+        int weatherId = 0;
+        int maxTemp = 0;
+        int minTemp = 0;
+        for (int i = 0; i < dayCount; i++) {
+            julianDay += reader.readZigzag();
+            weatherId += reader.readZigzag();
+            maxTemp += reader.readZigzag();
+            minTemp += reader.readZigzag();
+            payload.julianDays[i] = julianDay;
+            payload.weatherIds[i] = weatherId;
+            payload.maxTemps[i] = maxTemp / 10.0;
+            payload.minTemps[i] = minTemp / 10.0;
+        }
+        return payload;
+    }
+
+    /**
+     * Encodes a forecast, one day after the other.
+     */
+    public static class Encoder {
+        private final ByteArrayOutputStream mOut = new ByteArrayOutputStream(128);
+        private final int mDayCount;
+        private int mWrittenDays;
+
+        private int mLastJulianDay;
+        private int mLastWeatherId;
+        private int mLastMaxTemp;
+        private int mLastMinTemp;
+
+        /**
+         * Starts a payload of dayCount days, the first one being firstJulianDay.
+         */
+        public Encoder(boolean isMetric, int firstJulianDay, int dayCount) {
+            mDayCount = dayCount;
+            mOut.write(VERSION);
+            mOut.write(isMetric ? FLAG_METRIC : 0);
+            writeVarInt(firstJulianDay);
+            writeVarInt(dayCount);
+            mLastJulianDay = firstJulianDay;
+        }
+
+        /**
+         * Adds the next day; days must be added in order.
+         */
+        public void addDay(int julianDay, int weatherId, double maxTemp, double minTemp) {
+            if (mWrittenDays == mDayCount) {
+                throw new IllegalStateException("All the " + mDayCount + " days were already added");
+            }
+            int max = (int) Math.round(maxTemp * 10);
+            int min = (int) Math.round(minTemp * 10);
+            writeVarInt(zigzag(julianDay - mLastJulianDay));
+            writeVarInt(zigzag(weatherId - mLastWeatherId));
+            writeVarInt(zigzag(max - mLastMaxTemp));
+            writeVarInt(zigzag(min - mLastMinTemp));
+            mLastJulianDay = julianDay;
+            mLastWeatherId = weatherId;
+            mLastMaxTemp = max;
+            mLastMinTemp = min;
+            mWrittenDays++;
+        }
+
+        public byte[] toByteArray() {
+            if (mWrittenDays != mDayCount) {
+                throw new IllegalStateException("Only " + mWrittenDays + " of " + mDayCount + " days were added");
+            }
+            return mOut.toByteArray();
+        }
+
+        private static int zigzag(int value) {
+            return (value << 1) ^ (value >> 31);
+        }
+
+        private void writeVarInt(int value) {
+            while ((value & ~0x7F) != 0) {
+                mOut.write((value & 0x7F) | 0x80);
+                value >>>= 7;
+            }
+            mOut.write(value);
+        }
+    }
+
+    private static class Reader {
+        private final byte[] mBytes;
+        private int mPosition;
+
+        Reader(byte[] bytes) {
+            mBytes = bytes;
+        }
+
+        int readByte() throws IOException {
+            if (mPosition == mBytes.length) {
+                throw new IOException("Truncated forecast payload");
+            }
+            return mBytes[mPosition++] & 0xFF;
+        }
+
+        int readVarInt() throws IOException {
+            int value = 0;
+            for (int shift = 0; shift < 32; shift += 7) {
+                int b = readByte();
+                value |= (b & 0x7F) << shift;
+                if ((b & 0x80) == 0) {
+                    return value;
+                }
+            }
+            throw new IOException("Malformed forecast payload");
+        }
+
+        int readZigzag() throws IOException {
+            int value = readVarInt();
+            return (value >>> 1) ^ -(value & 1);
+        }
+    }
+}
@@ -0,0 +1,129 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.shared;
+
+import java.util.Arrays;
+
+/**
+ * The graphics of each weather condition id returned by the OpenWeatherMap call, shared by the
+ * app and the watch face.
+ *
+ * Each id from {@link #FIRST_ID} to {@link #LAST_ID} has its entry in a table built once, so a
+ * lookup is an array access rather than a chain of range checks.  The tables hold kinds of art,
+ * which each module maps to its own drawables, since the app has icons the watch face doesn't.
+ *
+ * Based on weather code data found at:
+ * http://bugs.openweathermap.org/projects/api/wiki/Weather_Condition_Codes
+ */
+public final class WeatherConditions {
+
+    public static final int FIRST_ID = 200;
+    public static final int LAST_ID = 962;
+
+    // The kinds of art, in the order of the arrays of resources that the modules index with them.
+    public static final int ART_NONE = -1;
+    public static final int ART_STORM = 0;
+    public static final int ART_LIGHT_RAIN = 1;
+    public static final int ART_RAIN = 2;
+    public static final int ART_SNOW = 3;
+    public static final int ART_FOG = 4;
+    public static final int ART_CLEAR = 5;
+    public static final int ART_LIGHT_CLOUDS = 6;
+    public static final int ART_CLOUDS = 7;
+    public static final int ART_COUNT = 8;
+
+    // The names of the kinds of art in the URLs of the art packs.
+    private static final String[] ART_NAMES = {
+            "storm", "light_rain", "rain", "snow", "fog", "clear", "light_clouds", "clouds"
+    };
+
+    // The photo of each kind of art, plus the one of dust.
+    private static final int IMAGE_DUST = ART_COUNT;
+    private static final String[] IMAGE_URLS = {
+            "http://upload.wikimedia.org/wikipedia/commons/2/28/Thunderstorm_in_Annemasse,_France.jpg",
+            "http://upload.wikimedia.org/wikipedia/commons/a/a0/Rain_on_leaf_504605006.jpg",
+            "http://upload.wikimedia.org/wikipedia/commons/6/6c/Rain-on-Thassos.jpg",
+            "http://upload.wikimedia.org/wikipedia/commons/b/b8/Fresh_snow.JPG",
+            "http://upload.wikimedia.org/wikipedia/commons/e/e6/Westminster_fog_-_London_-_UK.jpg",
+            "http://upload.wikimedia.org/wikipedia/commons/7/7e/A_few_trees_and_the_sun_(6009964513).jpg",
+            "http://upload.wikimedia.org/wikipedia/commons/e/e7/Cloudy_Blue_Sky_(5031259890).jpg",
+            "http://upload.wikimedia.org/wikipedia/commons/5/54/Cloudy_hills_in_Elis,_Greece_2.jpg",
+            "http://upload.wikimedia.org/wikipedia/commons/d/dc/Raised_dust_ahead_of_a_severe_thunderstorm_1.jpg"
+    };
+
+    private static final byte[] sArts = new byte[LAST_ID - FIRST_ID + 1];
+    private static final byte[] sImages = new byte[LAST_ID - FIRST_ID + 1];
+
+    static {
+        // Ranges are given in the order they used to be checked in: the first one wins.
+        Arrays.fill(sArts, (byte) ART_NONE);
+        Arrays.fill(sImages, (byte) ART_NONE);
+        putRange(200, 232, ART_STORM, ART_STORM);
+        putRange(300, 321, ART_LIGHT_RAIN, ART_LIGHT_RAIN);
+        putRange(500, 504, ART_RAIN, ART_RAIN);
+        putRange(511, 511, ART_SNOW, ART_SNOW);
+        putRange(520, 531, ART_RAIN, ART_RAIN);
+        putRange(600, 622, ART_SNOW, ART_SNOW);
+        putRange(701, 761, ART_FOG, ART_FOG);
+        putRange(761, 761, ART_STORM, IMAGE_DUST);
+        putRange(781, 781, ART_STORM, IMAGE_DUST);
+        putRange(800, 800, ART_CLEAR, ART_CLEAR);
+        putRange(801, 801, ART_LIGHT_CLOUDS, ART_LIGHT_CLOUDS);
+        putRange(802, 804, ART_CLOUDS, ART_CLOUDS);
+    }
+
+    private static void putRange(int firstId, int lastId, int art, int image) {
+        for (int id = firstId; id <= lastId; id++) {
+            if (sArts[id - FIRST_ID] == ART_NONE) {
+                sArts[id - FIRST_ID] = (byte) art;
+                sImages[id - FIRST_ID] = (byte) image;
+            }
+        }
+    }
+
+    private WeatherConditions() {
+    }
+
+    /**
+     * @param weatherId from OpenWeatherMap API response
+     * @return the kind of art of the weather condition, {@link #ART_NONE} if it has none.
+     */
+    public static int getArt(int weatherId) {
+        if (weatherId < FIRST_ID || weatherId > LAST_ID) {
+            return ART_NONE;
+        }
+        return sArts[weatherId - FIRST_ID];
+    }
+
+    /**
+     * @return the name of a kind of art in the URLs of the art packs.
+     */
+    public static String getArtName(int art) {
+        return ART_NAMES[art];
+    }
+
+    /**
+     * @param weatherId from OpenWeatherMap API response
+     * @return A string URL to an appropriate image or null if no mapping is found
+     */
+    public static String getImageUrl(int weatherId) {
+        if (weatherId < FIRST_ID || weatherId > LAST_ID) {
+            return null;
+        }
+        int image = sImages[weatherId - FIRST_ID];
+        return image == ART_NONE ? null : IMAGE_URLS[image];
+    }
+}
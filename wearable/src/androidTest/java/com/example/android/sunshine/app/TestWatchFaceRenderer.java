@@ -0,0 +1,106 @@
+package com.example.android.sunshine.app;
+
+import android.graphics.Bitmap;
+import android.graphics.Canvas;
+import android.graphics.Rect;
+import android.os.Debug;
+import android.test.AndroidTestCase;
+
+import java.util.Calendar;
+
+/*
+    Checks that the watch face draws its frames without allocating anything, once the date of
+    the day has been formatted, and that its static layer is only drawn again when it changes.
+ */
+public class TestWatchFaceRenderer extends AndroidTestCase {
+
+    static private final int FRAME_COUNT = 120;
+    static private final int SIZE = 320;
+
+    // Clear sky, which has an art.
+    static private final int TEST_WEATHER_ID = 800;
+
+    private WatchFaceRenderer mRenderer;
+    private Bitmap mBitmap;
+    private Canvas mCanvas;
+    private Rect mBounds;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        mRenderer = new WatchFaceRenderer(mContext.getResources());
+        mRenderer.applyWindowInsets(false);
+        mRenderer.setWeather("8\u00B0", "21\u00B0", TEST_WEATHER_ID);
+        mBitmap = Bitmap.createBitmap(SIZE, SIZE, Bitmap.Config.ARGB_8888);
+        mCanvas = new Canvas(mBitmap);
+        mBounds = new Rect(0, 0, SIZE, SIZE);
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        mRenderer.release();
+        mBitmap.recycle();
+        super.tearDown();
+    }
+
+    private static long getNoonOfToday() {
+        Calendar calendar = Calendar.getInstance();
+        calendar.set(Calendar.HOUR_OF_DAY, 12);
+        calendar.set(Calendar.MINUTE, 0);
+        calendar.set(Calendar.SECOND, 0);
+        calendar.set(Calendar.MILLISECOND, 0);
+        return calendar.getTimeInMillis();
+    }
+
+    // The thread allocation counters are deprecated, but ART still counts the allocations of the
+    // calling thread with them, and there's no other per-thread count before API 23 while this
+    // module supports API 21; only whether any allocation happened is checked, not its size.
+    @SuppressWarnings("deprecation")
+    private int countFrameAllocations(boolean is24Hour, boolean ambient) {
+        mRenderer.set24HourFormat(is24Hour);
+        long noon = getNoonOfToday();
+        // the first frame of the day formats the date
+        mRenderer.draw(mCanvas, mBounds, noon, ambient, true);
+
+        Debug.resetThreadAllocCount();
+        Debug.startAllocCounting();
+        for (int i = 0; i < FRAME_COUNT; i++) {
+            mRenderer.draw(mCanvas, mBounds, noon + i * 1000, ambient, true);
+        }
+        Debug.stopAllocCounting();
+        return Debug.getThreadAllocCount();
+    }
+
+    public void testInteractiveFramesDontAllocate() {
+        assertEquals("Error: interactive 24-hour frames allocate",
+                0, countFrameAllocations(true, false));
+        assertEquals("Error: interactive 12-hour frames allocate",
+                0, countFrameAllocations(false, false));
+    }
+
+    public void testAmbientFramesDontAllocate() {
+        assertEquals("Error: ambient 12-hour frames allocate",
+                0, countFrameAllocations(false, true));
+    }
+
+    public void testLayerIsOnlyDrawnWhenItChanges() {
+        long noon = getNoonOfToday();
+        for (int i = 0; i < FRAME_COUNT; i++) {
+            mRenderer.draw(mCanvas, mBounds, noon + i * 1000, false, true);
+        }
+        assertEquals("Error: the layer is drawn on every frame", 1, mRenderer.getLayerBuildCount());
+
+        mRenderer.setWeather("9\u00B0", "22\u00B0", TEST_WEATHER_ID);
+        mRenderer.draw(mCanvas, mBounds, noon, false, true);
+        assertEquals("Error: the layer isn't drawn again for new weather", 2, mRenderer.getLayerBuildCount());
+
+        mRenderer.draw(mCanvas, mBounds, noon, true, true);
+        assertEquals("Error: the layer isn't drawn again in ambient mode", 3, mRenderer.getLayerBuildCount());
+
+        mRenderer.draw(mCanvas, mBounds, noon, true, false);
+        assertEquals("Error: the layer isn't drawn again for a peek card", 4, mRenderer.getLayerBuildCount());
+
+        mRenderer.draw(mCanvas, mBounds, noon + 24 * 60 * 60 * 1000, true, false);
+        assertEquals("Error: the layer isn't drawn again the next day", 5, mRenderer.getLayerBuildCount());
+    }
+}
@@ -0,0 +1,73 @@
+package com.example.android.sunshine.app;
+
+import android.os.Handler;
+import android.os.HandlerThread;
+import android.test.AndroidTestCase;
+import android.text.format.DateUtils;
+
+/*
+    Checks that the weather refresh stays scheduled while the watch face's timer is stopped and
+    started again, as it is on every ambient mode or visibility change.
+ */
+public class TestWeatherRefreshScheduler extends AndroidTestCase {
+
+    // The watch face's timer message, which its updateTimer removes on every change of mode.
+    static private final int MSG_UPDATE_TIME = 0;
+
+    static private final long REQUIRE_INTERVAL_MS = DateUtils.HOUR_IN_MILLIS;
+
+    private HandlerThread mThread;
+    private Handler mUpdateTimeHandler;
+    private WeatherRefreshScheduler mScheduler;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        mThread = new HandlerThread("TestWeatherRefreshScheduler");
+        mThread.start();
+        mUpdateTimeHandler = new Handler(mThread.getLooper());
+        mScheduler = new WeatherRefreshScheduler(mThread.getLooper(), REQUIRE_INTERVAL_MS,
+                new WeatherRefreshScheduler.Callback() {
+                    @Override
+                    public boolean onRefreshRequired() {
+                        return true;
+                    }
+                });
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        mScheduler.stop();
+        mThread.quit();
+        super.tearDown();
+    }
+
+    /**
+     * Does what the watch face's updateTimer does when the ambient mode changes.
+     */
+    private void toggleAmbientMode(boolean ambient) {
+        mUpdateTimeHandler.removeMessages(MSG_UPDATE_TIME);
+        if (!ambient) {
+            mUpdateTimeHandler.sendEmptyMessageDelayed(MSG_UPDATE_TIME, DateUtils.SECOND_IN_MILLIS);
+        }
+    }
+
+    public void testRefreshSurvivesAmbientToggle() {
+        // fresh weather, so that the refresh is an hour away
+        mScheduler.onWeatherReceived(System.currentTimeMillis());
+        mScheduler.start();
+        assertTrue("Error: no refresh scheduled", mScheduler.isScheduled());
+
+        toggleAmbientMode(true);
+        assertTrue("Error: entering ambient mode removed the refresh", mScheduler.isScheduled());
+        toggleAmbientMode(false);
+        assertTrue("Error: leaving ambient mode removed the refresh", mScheduler.isScheduled());
+    }
+
+    public void testStopRemovesRefresh() {
+        mScheduler.onWeatherReceived(System.currentTimeMillis());
+        mScheduler.start();
+        mScheduler.stop();
+        assertFalse("Error: a refresh is still scheduled once stopped", mScheduler.isScheduled());
+    }
+}
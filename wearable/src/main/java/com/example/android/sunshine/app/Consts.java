@@ -4,13 +4,10 @@ package com.example.android.sunshine.app;
  * Created by Fabien on 14/01/2016.
  */
 public class Consts {
-    public static final String KEY_WEATHER_WEATHER_ID = "WeatherId";
-    public static final String KEY_WEATHER_CONDITION = "Condition";
-    public static final String KEY_WEATHER_TEMPERATURE_MIN = "TemperatureMin";
-    public static final String KEY_WEATHER_TEMPERATURE_MAX = "TemperatureMax";
-    public static final String KEY_WEATHER_UPDATE_TIME = "UpdateTime";
+    public static final String KEY_WEATHER_FORECAST = "Forecast";
     public static final String KEY_WEATHER_REQUEST_TIME = "RequestTime";
     public static final String PATH_WEATHER_INFO = "/SunshineWatchFace/WeatherInfo";
+    public static final String PATH_WEATHER_UPDATE_TIME = "/SunshineWatchFace/UpdateTime";
     public static final String PATH_WEATHER_REQUIRE = "/UpdateSunshineWatchFaceService/Require";
     public static final String COLON_STRING = ":";
 }
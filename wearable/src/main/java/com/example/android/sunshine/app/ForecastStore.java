@@ -0,0 +1,110 @@
+package com.example.android.sunshine.app;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.util.Log;
+
+import com.example.android.sunshine.shared.ForecastPayload;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+
+/**
+ * Keeps the last forecast received from the phone in a file, so that the watch face can move on
+ * to the next day, and format the temperatures by itself, while the phone is out of reach.
+ *
+ * The watch face also draws it from its first frame on, before it has even connected to the
+ * phone.  When the phone last found it up to date is kept alongside, in preferences.
+ */
+class ForecastStore {
+    private static final String TAG = "ForecastStore";
+
+    private static final String FILE_NAME = "forecast.bin";
+    private static final String PREFS_NAME = "forecast_store";
+    private static final String KEY_UPDATE_TIME = "update_time";
+
+    private final File mFile;
+    private final SharedPreferences mPrefs;
+    private ForecastPayload mForecast;
+    private boolean mLoaded;
+
+    ForecastStore(Context context) {
+        mFile = new File(context.getFilesDir(), FILE_NAME);
+        mPrefs = context.getSharedPreferences(PREFS_NAME, Context.MODE_PRIVATE);
+    }
+
+    /**
+     * @return when the phone last found the forecast up to date, 0 if it never did.
+     */
+    long getUpdateTime() {
+        return mPrefs.getLong(KEY_UPDATE_TIME, 0);
+    }
+
+    void putUpdateTime(long updateTime) {
+        mPrefs.edit().putLong(KEY_UPDATE_TIME, updateTime).apply();
+    }
+
+    /**
+     * @return the last forecast stored, or null if there's none.
+     */
+    synchronized ForecastPayload get() {
+        if (!mLoaded) {
+            mLoaded = true;
+            if (mFile.exists()) {
+                try {
+                    mForecast = ForecastPayload.decode(readFile());
+                } catch (IOException e) {
+                    Log.w(TAG, "Can't read the stored forecast: " + e);
+                }
+            }
+        }
+        return mForecast;
+    }
+
+    /**
+     * Decodes the payload and stores it in place of the previous one.
+     *
+     * @throws IOException if the payload can't be decoded or written, in which case the previous
+     * one is kept.
+     */
+    synchronized ForecastPayload put(byte[] payload) throws IOException {
+        ForecastPayload forecast = ForecastPayload.decode(payload);
+
+        // written aside first, so that a reader never finds half a payload
+        File tmpFile = new File(mFile.getPath() + ".tmp");
+        FileOutputStream out = new FileOutputStream(tmpFile);
+        try {
+            out.write(payload);
+            out.getFD().sync();
+        } finally {
+            out.close();
+        }
+        if (!tmpFile.renameTo(mFile)) {
+            throw new IOException("Can't rename " + tmpFile);
+        }
+
+        mForecast = forecast;
+        mLoaded = true;
+        return forecast;
+    }
+
+    private byte[] readFile() throws IOException {
+        byte[] bytes = new byte[(int) mFile.length()];
+        FileInputStream in = new FileInputStream(mFile);
+        try {
+            int offset = 0;
+            while (offset < bytes.length) {
+                int count = in.read(bytes, offset, bytes.length - offset);
+                if (count < 0) {
+                    throw new IOException("Unexpected end of " + mFile);
+                }
+                offset += count;
+            }
+        } finally {
+            in.close();
+        }
+        return bytes;
+    }
+}
@@ -21,28 +21,27 @@ import android.content.Context;
 import android.content.Intent;
 import android.content.IntentFilter;
 import android.content.res.Resources;
-import android.graphics.Bitmap;
-import android.graphics.BitmapFactory;
 import android.graphics.Canvas;
-import android.graphics.Color;
-import android.graphics.Paint;
 import android.graphics.Rect;
-import android.graphics.Typeface;
 import android.net.Uri;
+import android.os.AsyncTask;
 import android.os.Bundle;
 import android.os.Handler;
 import android.os.Message;
+import android.os.SystemClock;
 import android.support.wearable.watchface.CanvasWatchFaceService;
 import android.support.wearable.watchface.WatchFaceStyle;
 import android.text.format.DateFormat;
-import android.text.format.DateUtils;
+import android.text.format.Time;
 import android.util.Log;
 import android.view.SurfaceHolder;
 import android.view.WindowInsets;
 
+import com.example.android.sunshine.shared.ForecastPayload;
 import com.google.android.gms.common.ConnectionResult;
 import com.google.android.gms.common.api.GoogleApiClient;
 import com.google.android.gms.common.api.ResultCallback;
+import com.google.android.gms.wearable.Asset;
 import com.google.android.gms.wearable.CapabilityApi;
 import com.google.android.gms.wearable.CapabilityInfo;
 import com.google.android.gms.wearable.DataApi;
@@ -50,16 +49,18 @@ import com.google.android.gms.wearable.DataEvent;
 import com.google.android.gms.wearable.DataEventBuffer;
 import com.google.android.gms.wearable.DataMap;
 import com.google.android.gms.wearable.DataMapItem;
+import com.google.android.gms.wearable.MessageApi;
+import com.google.android.gms.wearable.MessageEvent;
 import com.google.android.gms.wearable.Node;
 import com.google.android.gms.wearable.NodeApi;
 import com.google.android.gms.wearable.PutDataMapRequest;
 import com.google.android.gms.wearable.Wearable;
 
-import java.text.SimpleDateFormat;
-import java.util.Calendar;
-import java.util.Locale;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
 import java.util.Set;
-import java.util.TimeZone;
 import java.util.concurrent.TimeUnit;
 
 /**
@@ -73,11 +74,6 @@ import java.util.concurrent.TimeUnit;
 public class SunshineWatchFaceService extends CanvasWatchFaceService {
     private static final String TAG = "SunshineWatchFace";
 
-    private static final Typeface BOLD_TYPEFACE =
-            Typeface.create(Typeface.SANS_SERIF, Typeface.BOLD);
-    private static final Typeface NORMAL_TYPEFACE =
-            Typeface.create(Typeface.SANS_SERIF, Typeface.NORMAL);
-
     /**
      * Update rate in milliseconds for active mode (non-ambient).
      */
@@ -92,7 +88,7 @@ public class SunshineWatchFaceService extends CanvasWatchFaceService {
     private class Engine extends CanvasWatchFaceService.Engine implements
             GoogleApiClient.ConnectionCallbacks,
             GoogleApiClient.OnConnectionFailedListener,
-            DataApi.DataListener, CapabilityApi.CapabilityListener {
+            DataApi.DataListener, MessageApi.MessageListener, CapabilityApi.CapabilityListener {
 
 
         private static final int MSG_UPDATE_TIME = 0;
@@ -113,7 +109,6 @@ public class SunshineWatchFaceService extends CanvasWatchFaceService {
                             long delayMs =
                                     ACTIVE_INTERVAL_MS - (timeMs % ACTIVE_INTERVAL_MS);
                             mUpdateTimeHandler.sendEmptyMessageDelayed(MSG_UPDATE_TIME, delayMs);
-                            requireWeatherInfo();
                         }
                         break;
                 }
@@ -126,7 +121,8 @@ public class SunshineWatchFaceService extends CanvasWatchFaceService {
         private final BroadcastReceiver mReceiver = new BroadcastReceiver() {
             @Override
             public void onReceive(Context context, Intent intent) {
-                mCalendar.setTimeZone(TimeZone.getDefault());
+                mRenderer.resetTimeZone();
+                mRenderer.set24HourFormat(DateFormat.is24HourFormat(SunshineWatchFaceService.this));
                 invalidate();
             }
         };
@@ -137,28 +133,7 @@ public class SunshineWatchFaceService extends CanvasWatchFaceService {
          */
         private boolean mRegisteredReceiver = false;
 
-        private Paint mHourPaint;
-        private Paint mMinutePaint;
-        private Paint mSecondPaint;
-        private Paint mAmPmPaint;
-        private Paint mColonPaint;
-        private Paint mDatePaint;
-        private Paint mSeparatorPaint;
-        private Paint mTemperatureMinPaint;
-        private Paint mTemperatureMaxPaint;
-
-        private Paint mArtPaint;
-        private Bitmap mArtBitmap;
-
-        private float mColonWidth;
-
-        private Calendar mCalendar;
-
-        private float mYOffset;
-
-        private String mAmString;
-        private String mPmString;
-
+        private WatchFaceRenderer mRenderer;
 
         /**
          * Whether the display supports fewer bits for each color in ambient mode. When true, we
@@ -172,29 +147,24 @@ public class SunshineWatchFaceService extends CanvasWatchFaceService {
         private GoogleApiClient mGoogleApiClient;
 
         private long mWeatherInfoReceivedTime;
-        private String mTemperatureMin;
-        private String mTemperatureMax;
-        private int mWeatherId;
-        private long mRequireInterval;
-        private long mWeatherInfoRequiredTime;
+        private ForecastStore mForecastStore;
+        private ForecastPayload mForecast;
+        // The weather of the forecast shown is the one of another day from this time on.
+        private long mForecastDayEnd;
+
+        // For the time from onCreate to the first frame with the weather, in elapsedRealtime.
+        private long mCreateTime;
+        private boolean mFirstCompleteFrameDrawn;
+
+        private WeatherRefreshScheduler mRefreshScheduler;
         private String mTranscriptionNodeId;
-        private float mYTimeOriginOffset;
-        private float mYDateOriginOffset;
-        private float mYTemperatureOriginOffset;
-        private float mYSecondsOriginOffset;
-        private float mSeparatorWidth;
-        private float mSeparatorVertMargin;
-        private float mYTimeDescent;
-        private float mYSecondsDescent;
-        private int mBackgroundColor;
-        private float mYTemperatureDescent;
-        private float mArtHeightWidth;
 
 
         @Override
         public void onCreate(SurfaceHolder holder) {
             super.onCreate(holder);
             Log.d(TAG, "onCreate");
+            mCreateTime = SystemClock.elapsedRealtime();
 
             mGoogleApiClient = new GoogleApiClient.Builder(SunshineWatchFaceService.this)
                     .addConnectionCallbacks(this)
@@ -210,59 +180,36 @@ public class SunshineWatchFaceService extends CanvasWatchFaceService {
 
             Resources resources = getResources();
 
-            mYOffset = resources.getDimension(R.dimen.sun_y_offset);
-            mAmString = resources.getString(R.string.fit_am);
-            mPmString = resources.getString(R.string.fit_pm);
+            mRenderer = new WatchFaceRenderer(resources);
+            mRenderer.set24HourFormat(DateFormat.is24HourFormat(SunshineWatchFaceService.this));
+            mForecastStore = new ForecastStore(SunshineWatchFaceService.this);
 
-            mBackgroundColor = resources.getColor(R.color.primary_dark);
-            int whiteColor = Color.WHITE;
-            int blackColor = Color.BLACK;
-            int greyColor = resources.getColor(R.color.primary_light);
-
-            mHourPaint = createTextPaint(whiteColor, BOLD_TYPEFACE);
-            mMinutePaint = createTextPaint(whiteColor);
-            mSecondPaint = createTextPaint(greyColor);
-            mAmPmPaint = createTextPaint(greyColor);
-            mColonPaint = createTextPaint(greyColor);
-            mDatePaint = createTextPaint(greyColor);
-            mSeparatorPaint = createSeparatorPaint(whiteColor);
-            mTemperatureMaxPaint = createTextPaint(whiteColor, BOLD_TYPEFACE);
-            mTemperatureMinPaint = createTextPaint(greyColor);
-
-            mArtPaint = createBitmapPaint(blackColor);
-            mArtBitmap = null;
+            mRefreshScheduler = new WeatherRefreshScheduler(mUpdateTimeHandler.getLooper(),
+                    resources.getInteger(R.integer.weather_default_require_interval),
+                    new WeatherRefreshScheduler.Callback() {
+                        @Override
+                        public boolean onRefreshRequired() {
+                            return requireWeatherInfo();
+                        }
+                    });
 
-            mCalendar = Calendar.getInstance();
+            // Show the last forecast received right away, rather than once the phone sent it
+            // again; it's a file of a few dozen bytes
+            mForecast = mForecastStore.get();
+            if (mForecast != null) {
+                showForecast(System.currentTimeMillis());
+            }
+            mWeatherInfoReceivedTime = mForecastStore.getUpdateTime();
+            mRefreshScheduler.onWeatherReceived(mWeatherInfoReceivedTime);
 
-            mRequireInterval = resources.getInteger(R.integer.weather_default_require_interval);
-            mWeatherInfoRequiredTime = System.currentTimeMillis() - (DateUtils.SECOND_IN_MILLIS * 58);
             mGoogleApiClient.connect();
         }
 
-        private Paint createTextPaint(int color) {
-            return createTextPaint(color, NORMAL_TYPEFACE);
-        }
-        private Paint createTextPaint(int color, Typeface typeface) {
-            Paint paint = new Paint();
-            paint.setColor(color);
-            paint.setTypeface(typeface);
-            paint.setAntiAlias(true);
-            return paint;
-        }
-        private Paint createSeparatorPaint(int color) {
-            Paint paint = new Paint();
-            paint.setColor(color);
-            return paint;
-        }
-        private Paint createBitmapPaint(int color) {
-            Paint paint = new Paint();
-            paint.setColor(color);
-            return paint;
-        }
-
         @Override
         public void onDestroy() {
             mUpdateTimeHandler.removeMessages(MSG_UPDATE_TIME);
+            mRefreshScheduler.stop();
+            mRenderer.release();
             super.onDestroy();
         }
 
@@ -277,12 +224,15 @@ public class SunshineWatchFaceService extends CanvasWatchFaceService {
                 registerReceiver();
 
                 // Update time zone and date formats, in case they changed while we weren't visible.
-                mCalendar.setTimeZone(TimeZone.getDefault());
+                mRenderer.resetTimeZone();
+                mRenderer.set24HourFormat(DateFormat.is24HourFormat(SunshineWatchFaceService.this));
             } else {
                 unregisterReceiver();
+                mRefreshScheduler.stop();
 
                 if (mGoogleApiClient != null && mGoogleApiClient.isConnected()) {
                     Wearable.DataApi.removeListener(mGoogleApiClient, this);
+                    Wearable.MessageApi.removeListener(mGoogleApiClient, this);
                     mGoogleApiClient.disconnect();
                 }
             }
@@ -299,6 +249,8 @@ public class SunshineWatchFaceService extends CanvasWatchFaceService {
             }
             mRegisteredReceiver = true;
             IntentFilter filter = new IntentFilter(Intent.ACTION_TIMEZONE_CHANGED);
+            filter.addAction(Intent.ACTION_LOCALE_CHANGED);
+            filter.addAction(Intent.ACTION_TIME_CHANGED);
             SunshineWatchFaceService.this.registerReceiver(mReceiver, filter);
         }
 
@@ -316,35 +268,7 @@ public class SunshineWatchFaceService extends CanvasWatchFaceService {
             Log.d(TAG, "onApplyWindowInsets: " + (insets.isRound() ? "round" : "square"));
 
             // Load resources that have alternate values for round watches.
-            Resources resources = SunshineWatchFaceService.this.getResources();
-            boolean isRound = insets.isRound();
-            float textSize = resources.getDimension(isRound
-                    ? R.dimen.sun_text_size_round : R.dimen.sun_text_size);
-
-            mHourPaint.setTextSize(textSize);
-            mMinutePaint.setTextSize(textSize);
-            mSecondPaint.setTextSize(resources.getDimension(R.dimen.sun_seconds_text_size));
-            mAmPmPaint.setTextSize(resources.getDimension(R.dimen.sun_am_pm_size));
-            mColonPaint.setTextSize(textSize);
-            mDatePaint.setTextSize(resources.getDimension(R.dimen.sun_date_text_size));
-            mTemperatureMaxPaint.setTextSize(resources.getDimension(R.dimen.sun_temperature_text_size));
-            mTemperatureMinPaint.setTextSize(resources.getDimension(R.dimen.sun_temperature_text_size));
-
-            mYOffset = resources.getDimension(isRound
-                    ? R.dimen.sun_y_offset_round : R.dimen.sun_y_offset);
-
-            mColonWidth = mColonPaint.measureText(Consts.COLON_STRING);
-            mYTimeOriginOffset = -mHourPaint.ascent();
-            mYTimeDescent = mHourPaint.descent();
-            mYSecondsOriginOffset = -mSecondPaint.ascent();
-            mYSecondsDescent = mSecondPaint.descent();
-            mYDateOriginOffset = -mDatePaint.ascent();
-            mYTemperatureOriginOffset = -mTemperatureMaxPaint.ascent();
-            mYTemperatureDescent = mTemperatureMaxPaint.descent();
-            mArtHeightWidth = resources.getDimension(R.dimen.sun_art_height_width);
-
-            mSeparatorWidth = resources.getDimension(R.dimen.sun_separ_width);
-            mSeparatorVertMargin = resources.getDimension(R.dimen.sun_separ_vert_margin);
+            mRenderer.applyWindowInsets(insets.isRound());
         }
 
         @Override
@@ -352,7 +276,7 @@ public class SunshineWatchFaceService extends CanvasWatchFaceService {
             super.onPropertiesChanged(properties);
 
             boolean burnInProtection = properties.getBoolean(PROPERTY_BURN_IN_PROTECTION, false);
-            mHourPaint.setTypeface(burnInProtection ? NORMAL_TYPEFACE : BOLD_TYPEFACE);
+            mRenderer.setBurnInProtection(burnInProtection);
 
             mLowBitAmbient = properties.getBoolean(PROPERTY_LOW_BIT_AMBIENT, false);
 
@@ -366,7 +290,6 @@ public class SunshineWatchFaceService extends CanvasWatchFaceService {
             Log.d(TAG, "onTimeTick: ambient = " + isInAmbientMode());
 
             invalidate();
-            requireWeatherInfo();
         }
 
         @Override
@@ -375,15 +298,7 @@ public class SunshineWatchFaceService extends CanvasWatchFaceService {
             Log.d(TAG, "onAmbientModeChanged: " + inAmbientMode);
 
             if (mLowBitAmbient) {
-                boolean antiAlias = !inAmbientMode;
-                mHourPaint.setAntiAlias(antiAlias);
-                mMinutePaint.setAntiAlias(antiAlias);
-                mSecondPaint.setAntiAlias(antiAlias);
-                mAmPmPaint.setAntiAlias(antiAlias);
-                mColonPaint.setAntiAlias(antiAlias);
-                mDatePaint.setAntiAlias(antiAlias);
-                mTemperatureMaxPaint.setAntiAlias(antiAlias);
-                mTemperatureMinPaint.setAntiAlias(antiAlias);
+                mRenderer.setAntiAlias(!inAmbientMode);
             }
             invalidate();
 
@@ -392,139 +307,22 @@ public class SunshineWatchFaceService extends CanvasWatchFaceService {
             updateTimer();
         }
 
-        private String formatTwoDigitNumber(int hour) {
-            return String.format("%02d", hour);
-        }
-        private String getAmPmString(int amPm) {
-            return amPm == Calendar.AM ? mAmString : mPmString;
-        }
-        private String getDateString(Calendar calendar) {
-            SimpleDateFormat simpleDateFormat = new SimpleDateFormat("ccc MMM d yyyy", Locale.getDefault());
-            return simpleDateFormat.format(calendar.getTime());
-        }
-
         @Override
         public void onDraw(Canvas canvas, Rect bounds) {
-            final long now = System.currentTimeMillis();
-            mCalendar.setTimeInMillis(now);
-            final boolean is24Hour = DateFormat.is24HourFormat(SunshineWatchFaceService.this);
-            final float xOffsetCenter = bounds.centerX();
-
-            // Draw the background.
-            if (!isInAmbientMode()) {
-                canvas.drawColor(mBackgroundColor);
+            long now = System.currentTimeMillis();
+            if (now >= mForecastDayEnd && mForecast != null) {
+                // a new day: show its weather, from the forecast already received
+                showForecast(now);
             }
-            else {
-                canvas.drawColor(Color.BLACK);
-            }
-
-            // Draw the time
-            //- get data
-            // -> hour
-            String hourString;
-            if (is24Hour) {
-                hourString = formatTwoDigitNumber(mCalendar.get(Calendar.HOUR_OF_DAY));
-            } else {
-                int hour = mCalendar.get(Calendar.HOUR);
-                if (hour == 0) {
-                    hour = 12;
-                }
-                hourString = String.valueOf(hour);
-            }
-            // -> minutes
-            String minuteString = formatTwoDigitNumber(mCalendar.get(Calendar.MINUTE));
-            // -> seconds (and am-pm)
-            String secondsString = formatTwoDigitNumber(mCalendar.get(Calendar.SECOND));
-
-            //- calculate positions
-            float widthHours = mHourPaint.measureText(hourString);
-            float widthMinutes = mMinutePaint.measureText(minuteString);
-            float widthSeconds = mSecondPaint.measureText(secondsString);
-            float widthTime = widthHours + mColonWidth + widthMinutes;// + mColonWidth + widthSeconds;
-            float xOffsetHours = xOffsetCenter - (widthTime / 2f);
-            float xOffsetColon1 = xOffsetHours + widthHours;
-            float xOffsetMinutes = xOffsetColon1 + mColonWidth;
-            float xOffsetColon2 = xOffsetMinutes + widthMinutes;    //not show
-            float xOffsetSeconds = xOffsetColon2;// + mColonWidth;
-            float y = mYOffset;
-            float yOffsetHours = y + mYTimeOriginOffset;
-            float yOffsetSeconds = y + mYSecondsOriginOffset + mYTimeDescent - mYSecondsDescent;
-
-            //- draw the hours
-            canvas.drawText(hourString,
-                    xOffsetHours, yOffsetHours, mHourPaint);
-
-            //- draw first colon
-            canvas.drawText(Consts.COLON_STRING,
-                    xOffsetColon1, yOffsetHours, mColonPaint);
-
-            //- draw the minutes
-            canvas.drawText(minuteString,
-                    xOffsetMinutes, yOffsetHours, mMinutePaint);
-
-            // In interactive mode, draw a second colon followed by the seconds.
-            // Otherwise, if we're in 12-hour mode, draw AM/PM
-            if (!isInAmbientMode()) {
-                canvas.drawText(secondsString,
-                        xOffsetSeconds, yOffsetSeconds, mSecondPaint);
-            } else if (!is24Hour) {
-                canvas.drawText(getAmPmString(mCalendar.get(Calendar.AM_PM)),
-                        xOffsetSeconds, yOffsetSeconds, mAmPmPaint);
-            }
-
-            // Draw the date
-            //- get data
-            String date = getDateString(mCalendar);
-            //- calculate positions
-            float xOffsetDate = xOffsetCenter - (mDatePaint.measureText(date) / 2);
-            y += mHourPaint.getTextSize();
-            //- draw the date
-            canvas.drawText(date,
-                    xOffsetDate, y + mYDateOriginOffset, mDatePaint);
-
-            // Draw the separator
-            //- calculate positions
-            float xOffsetSeparator = xOffsetCenter - (mSeparatorWidth / 2);
-            y += mDatePaint.getTextSize() + mSeparatorVertMargin;
-            //- draw the separator
-            canvas.drawLine(xOffsetSeparator, y,
-                    xOffsetSeparator + mSeparatorWidth, y,
-                    mSeparatorPaint);
-
-
-            // Only render steps if there is no peek card, so they do not bleed into each other
-            // in ambient mode.
-            if (getPeekCardPosition().isEmpty()) {
-                if (mTemperatureMin != null && mTemperatureMax != null) {
-                    //- calculate positions
-                    float widthTemperatureMax = mTemperatureMaxPaint.measureText(mTemperatureMax);
-                    float widthTemperatureMin = mTemperatureMinPaint.measureText(mTemperatureMin);
-                    float widthTemperatureWithArt = mArtHeightWidth + mColonWidth + widthTemperatureMax + mColonWidth + widthTemperatureMin;
-                    float xOffsetArt = xOffsetCenter - (widthTemperatureWithArt / 2f);
-                    float xOffsetTemperatureMax = xOffsetArt + mArtHeightWidth + mColonWidth;
-                    float xOffsetTemperatureMin = xOffsetTemperatureMax + widthTemperatureMax + mColonWidth;
-                    y += mSeparatorVertMargin;
-
-                    //- draw the art if weather condition exists
-                    int weatherArtResourceId = Utility.getArtResourceForWeatherCondition(mWeatherId);
-                    if (weatherArtResourceId != -1) {
-                        mArtBitmap = BitmapFactory.decodeResource(getResources(), weatherArtResourceId);
-                        mArtBitmap = Bitmap.createScaledBitmap(mArtBitmap,
-                                (int) mArtHeightWidth,
-                                (int) mArtHeightWidth, true);
-                        canvas.drawBitmap(
-                                mArtBitmap,
-                                xOffsetArt, y + (mYTemperatureDescent / 2), mArtPaint);
-                    }
-
-                    //- draw the temperature Max
-                    canvas.drawText(mTemperatureMax,
-                            xOffsetTemperatureMax, y + mYTemperatureOriginOffset, mTemperatureMaxPaint);
-                    //- draw the temperature Min
-                    canvas.drawText(mTemperatureMin,
-                            xOffsetTemperatureMin, y + mYTemperatureOriginOffset, mTemperatureMinPaint);
-                }
-
+            // Only render the weather if there is no peek card, so they do not bleed into each
+            // other in ambient mode.
+            boolean drawWeather = getPeekCardPosition().isEmpty();
+            mRenderer.draw(canvas, bounds, now, isInAmbientMode(), drawWeather);
+
+            if (!mFirstCompleteFrameDrawn && drawWeather && mRenderer.hasWeather()) {
+                mFirstCompleteFrameDrawn = true;
+                Log.i(TAG, "time to first complete frame: "
+                        + (SystemClock.elapsedRealtime() - mCreateTime) + " ms");
             }
         }
 
@@ -549,23 +347,18 @@ public class SunshineWatchFaceService extends CanvasWatchFaceService {
             return isVisible() && !isInAmbientMode();
         }
 
-        protected void requireWeatherInfo() {
+        /**
+         * Asks the phone for the weather, when {@link #mRefreshScheduler} finds it outdated.
+         *
+         * @return false if the phone isn't reachable.
+         */
+        protected boolean requireWeatherInfo() {
             Log.d(TAG, "requireWeatherInfo()");
 
-            if (!mGoogleApiClient.isConnected())
-                return;
+            if (!mGoogleApiClient.isConnected() || mTranscriptionNodeId == null)
+                return false;
 
             long timeMs = System.currentTimeMillis();
-
-            // The weather info is still up to date.
-            if ((timeMs - mWeatherInfoReceivedTime) <= mRequireInterval)
-                return;
-
-            // Try once in a min.
-            if ((timeMs - mWeatherInfoRequiredTime) <= DateUtils.MINUTE_IN_MILLIS)
-                return;
-
-            mWeatherInfoRequiredTime = timeMs;
             PutDataMapRequest putDataMapRequest = PutDataMapRequest.create(Consts.PATH_WEATHER_REQUIRE);
             putDataMapRequest.getDataMap().putLong(Consts.KEY_WEATHER_REQUEST_TIME, timeMs);
             Wearable.DataApi.putDataItem(mGoogleApiClient, putDataMapRequest.asPutDataRequest())
@@ -582,25 +375,80 @@ public class SunshineWatchFaceService extends CanvasWatchFaceService {
                             Log.d(TAG, "SendRequireMessage:" + sendMessageResult.getStatus());
                         }
                     });*/
+            return true;
         }
 
         protected void fetchData(DataMap dataMap) {
-            if (dataMap.containsKey(Consts.KEY_WEATHER_UPDATE_TIME)) {
-                mWeatherInfoReceivedTime = dataMap.getLong(Consts.KEY_WEATHER_UPDATE_TIME);
+            if (dataMap.containsKey(Consts.KEY_WEATHER_FORECAST)) {
+                new LoadForecastTask().execute(dataMap.getAsset(Consts.KEY_WEATHER_FORECAST));
             }
+        }
 
-            if (dataMap.containsKey(Consts.KEY_WEATHER_TEMPERATURE_MIN)) {
-                mTemperatureMin = dataMap.getString(Consts.KEY_WEATHER_TEMPERATURE_MIN);
-            }
-            if (dataMap.containsKey(Consts.KEY_WEATHER_TEMPERATURE_MAX)) {
-                mTemperatureMax = dataMap.getString(Consts.KEY_WEATHER_TEMPERATURE_MAX);
+        /**
+         * Shows the weather of the day of this time, or none if the forecast doesn't cover it.
+         */
+        private void showForecast(long now) {
+            Time time = new Time();
+            time.set(now);
+            int julianDay = Time.getJulianDay(now, time.gmtoff);
+            mForecastDayEnd = time.setJulianDay(julianDay + 1);
+
+            int day = mForecast.indexOfDay(julianDay);
+            if (day == -1) {
+                mRenderer.setWeather(null, null, 0);
+            } else {
+                mRenderer.setWeather(
+                        Utility.formatTemperature(SunshineWatchFaceService.this, mForecast.minTemps[day], mForecast.isMetric),
+                        Utility.formatTemperature(SunshineWatchFaceService.this, mForecast.maxTemps[day], mForecast.isMetric),
+                        mForecast.weatherIds[day]);
             }
+        }
 
-            if (dataMap.containsKey(Consts.KEY_WEATHER_WEATHER_ID)) {
-                mWeatherId = dataMap.getInt(Consts.KEY_WEATHER_WEATHER_ID);
+        /**
+         * Reads the forecast Asset and stores it, then shows it.
+         */
+        private class LoadForecastTask extends AsyncTask<Asset, Void, ForecastPayload> {
+            @Override
+            protected ForecastPayload doInBackground(Asset... assets) {
+                InputStream in = null;
+                try {
+                    DataApi.GetFdForAssetResult result = Wearable.DataApi
+                            .getFdForAsset(mGoogleApiClient, assets[0]).await();
+                    in = result.getInputStream();
+                    if (!result.getStatus().isSuccess() || in == null) {
+                        Log.w(TAG, "LoadForecastTask: " + result.getStatus());
+                        return null;
+                    }
+                    ByteArrayOutputStream out = new ByteArrayOutputStream();
+                    byte[] buffer = new byte[256];
+                    int count;
+                    while ((count = in.read(buffer)) != -1) {
+                        out.write(buffer, 0, count);
+                    }
+                    return mForecastStore.put(out.toByteArray());
+                } catch (IOException e) {
+                    Log.w(TAG, "LoadForecastTask: " + e);
+                    return null;
+                } finally {
+                    if (in != null) {
+                        try {
+                            in.close();
+                        } catch (IOException e) {
+                            // nothing more to read anyway
+                        }
+                    }
+                }
             }
 
-            invalidate();
+            @Override
+            protected void onPostExecute(ForecastPayload forecast) {
+                if (forecast != null) {
+                    mForecast = forecast;
+                    // the art is decoded here rather than on the next frame
+                    showForecast(System.currentTimeMillis());
+                    invalidate();
+                }
+            }
         }
 
         protected void getData() {
@@ -641,9 +489,10 @@ public class SunshineWatchFaceService extends CanvasWatchFaceService {
             getData();
 
             Wearable.DataApi.addListener(mGoogleApiClient, this);
+            Wearable.MessageApi.addListener(mGoogleApiClient, this);
             setupVoiceTranscription();
 
-            requireWeatherInfo();
+            mRefreshScheduler.start();
         }
 
         @Override
@@ -661,13 +510,31 @@ public class SunshineWatchFaceService extends CanvasWatchFaceService {
         public void onDataChanged(DataEventBuffer dataEvents) {
             for (int i = 0; i < dataEvents.getCount(); i++) {
                 DataEvent event = dataEvents.get(i);
-                DataMap dataMap = DataMap.fromByteArray(event.getDataItem().getData());
+                // unlike DataMap.fromByteArray, this resolves the forecast Asset
+                DataMap dataMap = DataMapItem.fromDataItem(event.getDataItem()).getDataMap();
                 Log.d(TAG, "onDataChanged: " + dataMap);
 
                 fetchData(dataMap);
             }
         }
 
+        /**
+         * The phone tells when the forecast we have was found up to date, rather than writing
+         * the same forecast again.
+         */
+        @Override
+        public void onMessageReceived(MessageEvent messageEvent) {
+            byte[] data = messageEvent.getData();
+            // the time, as a long; anything else isn't from the phone's gateway
+            if (Consts.PATH_WEATHER_UPDATE_TIME.equals(messageEvent.getPath())
+                    && data != null && data.length == 8) {
+                mWeatherInfoReceivedTime = ByteBuffer.wrap(data).getLong();
+                Log.d(TAG, "onMessageReceived: weather up to date at " + mWeatherInfoReceivedTime);
+                mRefreshScheduler.onWeatherReceived(mWeatherInfoReceivedTime);
+                mForecastStore.putUpdateTime(mWeatherInfoReceivedTime);
+            }
+        }
+
         private void setupVoiceTranscription() {
             //listen for state modification of connected nodes
             Wearable.CapabilityApi.addCapabilityListener(
@@ -699,11 +566,16 @@ public class SunshineWatchFaceService extends CanvasWatchFaceService {
             }
 
             Set<Node> connectedNodes = capabilityInfo.getNodes();
+            boolean wasReachable = mTranscriptionNodeId != null;
             if (connectedNodes.isEmpty()) {
                 mTranscriptionNodeId = null;
             } else {
                 mTranscriptionNodeId = pickBestNodeId(connectedNodes);
             }
+            if (!wasReachable && mTranscriptionNodeId != null) {
+                // don't wait for the backoff to ask for the weather we missed
+                mRefreshScheduler.onPhoneReachable();
+            }
 
             Log.e(TAG, "updateTranscriptionCapability: " + mTranscriptionNodeId);
         }
@@ -0,0 +1,531 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app;
+
+import android.content.res.Resources;
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.graphics.Canvas;
+import android.graphics.Color;
+import android.graphics.Paint;
+import android.graphics.Rect;
+import android.graphics.Typeface;
+import android.text.format.DateUtils;
+import android.util.SparseArray;
+
+import java.text.SimpleDateFormat;
+import java.util.Calendar;
+import java.util.Locale;
+import java.util.TimeZone;
+
+/**
+ * Draws the Sunshine watch face without allocating anything once it has been set up, since
+ * {@link #draw} runs every second in interactive mode and each GC pause shows up on the watch.
+ *
+ * Every string a frame can draw is prepared beforehand along with its width: the digits come
+ * from tables measured when the text sizes change, the date is formatted again only once
+ * midnight has passed or the time zone or the locale changed, and the art of each weather
+ * condition is decoded and scaled once for the size given by the insets.
+ *
+ * Only the time changes from one second to the next, so the background, the date, the separator
+ * and the weather are drawn into an off-screen layer, which each frame copies before drawing the
+ * time.  The layer is drawn again only when the weather, the day, the insets, the ambient mode
+ * or the peek card change.
+ */
+class WatchFaceRenderer {
+
+    private static final Typeface BOLD_TYPEFACE =
+            Typeface.create(Typeface.SANS_SERIF, Typeface.BOLD);
+    private static final Typeface NORMAL_TYPEFACE =
+            Typeface.create(Typeface.SANS_SERIF, Typeface.NORMAL);
+
+    private static final String DATE_PATTERN = "ccc MMM d yyyy";
+
+    // "00" to "59", for the hours of the 24-hour clock, the minutes and the seconds.
+    private static final String[] TWO_DIGITS = new String[60];
+    // "12" then "1" to "11", for the hours of the 12-hour clock.
+    private static final String[] TWELVE_HOURS = new String[12];
+
+    static {
+        for (int i = 0; i < TWO_DIGITS.length; i++) {
+            TWO_DIGITS[i] = (i < 10 ? "0" : "") + i;
+        }
+        for (int i = 0; i < TWELVE_HOURS.length; i++) {
+            TWELVE_HOURS[i] = String.valueOf(i == 0 ? 12 : i);
+        }
+    }
+
+    private final Resources mResources;
+
+    private final Paint mHourPaint;
+    private final Paint mMinutePaint;
+    private final Paint mSecondPaint;
+    private final Paint mAmPmPaint;
+    private final Paint mColonPaint;
+    private final Paint mDatePaint;
+    private final Paint mSeparatorPaint;
+    private final Paint mTemperatureMinPaint;
+    private final Paint mTemperatureMaxPaint;
+    private final Paint mArtPaint;
+
+    private final int mBackgroundColor;
+    private final String mAmString;
+    private final String mPmString;
+
+    // The widths of the digit tables, in the paint each one is drawn with.
+    private final float[] mHourWidths24 = new float[24];
+    private final float[] mHourWidths12 = new float[12];
+    private final float[] mMinuteWidths = new float[60];
+
+    private final Calendar mCalendar;
+    private SimpleDateFormat mDateFormat;
+    private String mDateString;
+    private float mDateWidth;
+    // The date is formatted again once this time has passed, i.e. at the next midnight.
+    private long mDateValidUntil;
+    // The offset of the time zone from UTC, so that the time of a frame is computed without the
+    // calendar, which allocates on some versions.  It's looked up again at the next hour, when a
+    // daylight saving change may happen.
+    private TimeZone mTimeZone;
+    private int mZoneOffset;
+    private long mZoneOffsetValidUntil;
+
+    private boolean mIs24Hour;
+
+    private String mTemperatureMin;
+    private String mTemperatureMax;
+    private float mTemperatureMinWidth;
+    private float mTemperatureMaxWidth;
+    private int mWeatherId;
+
+    // The scaled art of each weather condition already drawn, by art resource id.
+    private final SparseArray<Bitmap> mArtBitmaps = new SparseArray<Bitmap>();
+    private Bitmap mArtBitmap;
+
+    // The layer of everything but the time, and what it has been drawn for.
+    private Bitmap mLayerBitmap;
+    private Canvas mLayerCanvas;
+    private boolean mLayerValid;
+    private boolean mLayerAmbient;
+    private boolean mLayerDrawWeather;
+    private int mLayerBuildCount;
+
+    private float mYOffset;
+    private float mColonWidth;
+    private float mYTimeOriginOffset;
+    private float mYDateOriginOffset;
+    private float mYTemperatureOriginOffset;
+    private float mYSecondsOriginOffset;
+    private float mSeparatorWidth;
+    private float mSeparatorVertMargin;
+    private float mYTimeDescent;
+    private float mYSecondsDescent;
+    private float mYTemperatureDescent;
+    private float mArtHeightWidth;
+
+    WatchFaceRenderer(Resources resources) {
+        mResources = resources;
+
+        mYOffset = resources.getDimension(R.dimen.sun_y_offset);
+        mAmString = resources.getString(R.string.fit_am);
+        mPmString = resources.getString(R.string.fit_pm);
+
+        mBackgroundColor = resources.getColor(R.color.primary_dark);
+        int whiteColor = Color.WHITE;
+        int blackColor = Color.BLACK;
+        int greyColor = resources.getColor(R.color.primary_light);
+
+        mHourPaint = createTextPaint(whiteColor, BOLD_TYPEFACE);
+        mMinutePaint = createTextPaint(whiteColor);
+        mSecondPaint = createTextPaint(greyColor);
+        mAmPmPaint = createTextPaint(greyColor);
+        mColonPaint = createTextPaint(greyColor);
+        mDatePaint = createTextPaint(greyColor);
+        mSeparatorPaint = createSeparatorPaint(whiteColor);
+        mTemperatureMaxPaint = createTextPaint(whiteColor, BOLD_TYPEFACE);
+        mTemperatureMinPaint = createTextPaint(greyColor);
+
+        mArtPaint = createBitmapPaint(blackColor);
+
+        mTimeZone = TimeZone.getDefault();
+        mCalendar = Calendar.getInstance(mTimeZone);
+        mDateFormat = new SimpleDateFormat(DATE_PATTERN, Locale.getDefault());
+    }
+
+    private Paint createTextPaint(int color) {
+        return createTextPaint(color, NORMAL_TYPEFACE);
+    }
+    private Paint createTextPaint(int color, Typeface typeface) {
+        Paint paint = new Paint();
+        paint.setColor(color);
+        paint.setTypeface(typeface);
+        paint.setAntiAlias(true);
+        return paint;
+    }
+    private Paint createSeparatorPaint(int color) {
+        Paint paint = new Paint();
+        paint.setColor(color);
+        return paint;
+    }
+    private Paint createBitmapPaint(int color) {
+        Paint paint = new Paint();
+        paint.setColor(color);
+        return paint;
+    }
+
+    /**
+     * Sizes the text and the art for a round or a square screen, and measures everything again.
+     */
+    void applyWindowInsets(boolean isRound) {
+        float textSize = mResources.getDimension(isRound
+                ? R.dimen.sun_text_size_round : R.dimen.sun_text_size);
+
+        mHourPaint.setTextSize(textSize);
+        mMinutePaint.setTextSize(textSize);
+        mSecondPaint.setTextSize(mResources.getDimension(R.dimen.sun_seconds_text_size));
+        mAmPmPaint.setTextSize(mResources.getDimension(R.dimen.sun_am_pm_size));
+        mColonPaint.setTextSize(textSize);
+        mDatePaint.setTextSize(mResources.getDimension(R.dimen.sun_date_text_size));
+        mTemperatureMaxPaint.setTextSize(mResources.getDimension(R.dimen.sun_temperature_text_size));
+        mTemperatureMinPaint.setTextSize(mResources.getDimension(R.dimen.sun_temperature_text_size));
+
+        mYOffset = mResources.getDimension(isRound
+                ? R.dimen.sun_y_offset_round : R.dimen.sun_y_offset);
+
+        mColonWidth = mColonPaint.measureText(Consts.COLON_STRING);
+        mYTimeOriginOffset = -mHourPaint.ascent();
+        mYTimeDescent = mHourPaint.descent();
+        mYSecondsOriginOffset = -mSecondPaint.ascent();
+        mYSecondsDescent = mSecondPaint.descent();
+        mYDateOriginOffset = -mDatePaint.ascent();
+        mYTemperatureOriginOffset = -mTemperatureMaxPaint.ascent();
+        mYTemperatureDescent = mTemperatureMaxPaint.descent();
+
+        mSeparatorWidth = mResources.getDimension(R.dimen.sun_separ_width);
+        mSeparatorVertMargin = mResources.getDimension(R.dimen.sun_separ_vert_margin);
+
+        measureHours();
+        measureDigits(mMinutePaint, mMinuteWidths);
+        measureTemperatures();
+        if (mDateString != null) {
+            mDateWidth = mDatePaint.measureText(mDateString);
+        }
+
+        float artHeightWidth = mResources.getDimension(R.dimen.sun_art_height_width);
+        if (artHeightWidth != mArtHeightWidth) {
+            mArtHeightWidth = artHeightWidth;
+            clearArtBitmaps();
+            mArtBitmap = getArtBitmap(mWeatherId);
+        }
+        mLayerValid = false;
+    }
+
+    void setBurnInProtection(boolean burnInProtection) {
+        mHourPaint.setTypeface(burnInProtection ? NORMAL_TYPEFACE : BOLD_TYPEFACE);
+        measureHours();
+    }
+
+    void setAntiAlias(boolean antiAlias) {
+        mHourPaint.setAntiAlias(antiAlias);
+        mMinutePaint.setAntiAlias(antiAlias);
+        mSecondPaint.setAntiAlias(antiAlias);
+        mAmPmPaint.setAntiAlias(antiAlias);
+        mColonPaint.setAntiAlias(antiAlias);
+        mDatePaint.setAntiAlias(antiAlias);
+        mTemperatureMaxPaint.setAntiAlias(antiAlias);
+        mTemperatureMinPaint.setAntiAlias(antiAlias);
+        mLayerValid = false;
+    }
+
+    void set24HourFormat(boolean is24Hour) {
+        mIs24Hour = is24Hour;
+    }
+
+    /**
+     * Picks up the current time zone and locale, and formats the date again on the next frame.
+     */
+    void resetTimeZone() {
+        mTimeZone = TimeZone.getDefault();
+        mCalendar.setTimeZone(mTimeZone);
+        mDateFormat = new SimpleDateFormat(DATE_PATTERN, Locale.getDefault());
+        mDateValidUntil = 0;
+        mZoneOffsetValidUntil = 0;
+        mLayerValid = false;
+    }
+
+    /**
+     * Sets the weather to draw; the art of the condition is decoded now if it hasn't been yet.
+     */
+    void setWeather(String temperatureMin, String temperatureMax, int weatherId) {
+        mTemperatureMin = temperatureMin;
+        mTemperatureMax = temperatureMax;
+        mWeatherId = weatherId;
+        measureTemperatures();
+        mArtBitmap = getArtBitmap(weatherId);
+        mLayerValid = false;
+    }
+
+    /**
+     * @return true if frames show the weather along with the time.
+     */
+    boolean hasWeather() {
+        return mTemperatureMin != null && mTemperatureMax != null;
+    }
+
+    void release() {
+        clearArtBitmaps();
+        mArtBitmap = null;
+        if (mLayerBitmap != null) {
+            mLayerBitmap.recycle();
+            mLayerBitmap = null;
+            mLayerCanvas = null;
+        }
+        mLayerValid = false;
+    }
+
+    /**
+     * @return how many times the static layer has been drawn, for the tests.
+     */
+    int getLayerBuildCount() {
+        return mLayerBuildCount;
+    }
+
+    private void measureHours() {
+        measureDigits(mHourPaint, mHourWidths24);
+        for (int i = 0; i < TWELVE_HOURS.length; i++) {
+            mHourWidths12[i] = mHourPaint.measureText(TWELVE_HOURS[i]);
+        }
+    }
+
+    private static void measureDigits(Paint paint, float[] widths) {
+        for (int i = 0; i < widths.length; i++) {
+            widths[i] = paint.measureText(TWO_DIGITS[i]);
+        }
+    }
+
+    private void measureTemperatures() {
+        mTemperatureMinWidth = mTemperatureMin == null ? 0 : mTemperatureMinPaint.measureText(mTemperatureMin);
+        mTemperatureMaxWidth = mTemperatureMax == null ? 0 : mTemperatureMaxPaint.measureText(mTemperatureMax);
+    }
+
+    /**
+     * @return the art of the weather condition at the size of the insets, or null if there's none.
+     */
+    private Bitmap getArtBitmap(int weatherId) {
+        int weatherArtResourceId = Utility.getArtResourceForWeatherCondition(weatherId);
+        if (weatherArtResourceId == -1 || mArtHeightWidth <= 0) {
+            return null;
+        }
+        Bitmap bitmap = mArtBitmaps.get(weatherArtResourceId);
+        if (bitmap == null) {
+            Bitmap art = BitmapFactory.decodeResource(mResources, weatherArtResourceId);
+            bitmap = Bitmap.createScaledBitmap(art,
+                    (int) mArtHeightWidth,
+                    (int) mArtHeightWidth, true);
+            if (bitmap != art) {
+                art.recycle();
+            }
+            mArtBitmaps.put(weatherArtResourceId, bitmap);
+        }
+        return bitmap;
+    }
+
+    private void clearArtBitmaps() {
+        for (int i = 0; i < mArtBitmaps.size(); i++) {
+            mArtBitmaps.valueAt(i).recycle();
+        }
+        mArtBitmaps.clear();
+    }
+
+    /**
+     * Formats the date of today, and remembers when the next day starts.
+     */
+    private void updateDate(long now) {
+        mCalendar.setTimeInMillis(now);
+        mDateString = mDateFormat.format(mCalendar.getTime());
+        mDateWidth = mDatePaint.measureText(mDateString);
+
+        mCalendar.set(Calendar.HOUR_OF_DAY, 0);
+        mCalendar.set(Calendar.MINUTE, 0);
+        mCalendar.set(Calendar.SECOND, 0);
+        mCalendar.set(Calendar.MILLISECOND, 0);
+        mCalendar.add(Calendar.DAY_OF_MONTH, 1);
+        mDateValidUntil = mCalendar.getTimeInMillis();
+        mLayerValid = false;
+
+        updateZoneOffset(now);
+    }
+
+    /**
+     * Looks up the offset of the time zone, and remembers when the next hour starts.
+     */
+    private void updateZoneOffset(long now) {
+        mZoneOffset = mTimeZone.getOffset(now);
+        long local = now + mZoneOffset;
+        mZoneOffsetValidUntil = now - floorMod(local, DateUtils.HOUR_IN_MILLIS)
+                + DateUtils.HOUR_IN_MILLIS;
+    }
+
+    private static long floorMod(long x, long y) {
+        long mod = x % y;
+        return mod < 0 ? mod + y : mod;
+    }
+
+    /**
+     * Draws a frame.  Nothing is allocated unless the date has to be formatted again, or the
+     * layer has to be created for new bounds.
+     *
+     * @param drawWeather false when a peek card covers the bottom of the screen.
+     */
+    void draw(Canvas canvas, Rect bounds, long now, boolean ambient, boolean drawWeather) {
+        if (now >= mDateValidUntil || mDateString == null) {
+            updateDate(now);
+        } else if (now >= mZoneOffsetValidUntil) {
+            updateZoneOffset(now);
+        }
+        if (mLayerBitmap == null
+                || mLayerBitmap.getWidth() != bounds.width()
+                || mLayerBitmap.getHeight() != bounds.height()) {
+            if (mLayerBitmap != null) {
+                mLayerBitmap.recycle();
+            }
+            mLayerBitmap = Bitmap.createBitmap(bounds.width(), bounds.height(), Bitmap.Config.ARGB_8888);
+            mLayerCanvas = new Canvas(mLayerBitmap);
+            mLayerValid = false;
+        }
+        if (!mLayerValid || mLayerAmbient != ambient || mLayerDrawWeather != drawWeather) {
+            drawLayer(mLayerCanvas, bounds.centerX() - bounds.left, ambient, drawWeather);
+            mLayerAmbient = ambient;
+            mLayerDrawWeather = drawWeather;
+            mLayerValid = true;
+            mLayerBuildCount++;
+        }
+        canvas.drawBitmap(mLayerBitmap, bounds.left, bounds.top, null);
+
+        int secondOfDay = (int) (floorMod(now + mZoneOffset, DateUtils.DAY_IN_MILLIS)
+                / DateUtils.SECOND_IN_MILLIS);
+        int hourOfDay = secondOfDay / 3600;
+        final float xOffsetCenter = bounds.centerX();
+
+        // Draw the time
+        //- get data
+        // -> hour
+        String hourString;
+        float widthHours;
+        if (mIs24Hour) {
+            int hour = hourOfDay;
+            hourString = TWO_DIGITS[hour];
+            widthHours = mHourWidths24[hour];
+        } else {
+            int hour = hourOfDay % 12;
+            hourString = TWELVE_HOURS[hour];
+            widthHours = mHourWidths12[hour];
+        }
+        // -> minutes
+        int minute = secondOfDay / 60 % 60;
+        String minuteString = TWO_DIGITS[minute];
+        // -> seconds (and am-pm)
+        int second = secondOfDay % 60;
+        String secondsString = TWO_DIGITS[second];
+
+        //- calculate positions
+        float widthMinutes = mMinuteWidths[minute];
+        float widthTime = widthHours + mColonWidth + widthMinutes;// + mColonWidth + widthSeconds;
+        float xOffsetHours = xOffsetCenter - (widthTime / 2f);
+        float xOffsetColon1 = xOffsetHours + widthHours;
+        float xOffsetMinutes = xOffsetColon1 + mColonWidth;
+        float xOffsetColon2 = xOffsetMinutes + widthMinutes;    //not show
+        float xOffsetSeconds = xOffsetColon2;// + mColonWidth;
+        float y = bounds.top + mYOffset;
+        float yOffsetHours = y + mYTimeOriginOffset;
+        float yOffsetSeconds = y + mYSecondsOriginOffset + mYTimeDescent - mYSecondsDescent;
+
+        //- draw the hours
+        canvas.drawText(hourString,
+                xOffsetHours, yOffsetHours, mHourPaint);
+
+        //- draw first colon
+        canvas.drawText(Consts.COLON_STRING,
+                xOffsetColon1, yOffsetHours, mColonPaint);
+
+        //- draw the minutes
+        canvas.drawText(minuteString,
+                xOffsetMinutes, yOffsetHours, mMinutePaint);
+
+        // In interactive mode, draw a second colon followed by the seconds.
+        // Otherwise, if we're in 12-hour mode, draw AM/PM
+        if (!ambient) {
+            canvas.drawText(secondsString,
+                    xOffsetSeconds, yOffsetSeconds, mSecondPaint);
+        } else if (!mIs24Hour) {
+            canvas.drawText(hourOfDay < 12 ? mAmString : mPmString,
+                    xOffsetSeconds, yOffsetSeconds, mAmPmPaint);
+        }
+    }
+
+    /**
+     * Draws everything but the time: the background, the date, the separator and the weather.
+     */
+    private void drawLayer(Canvas canvas, float xOffsetCenter, boolean ambient, boolean drawWeather) {
+        // Draw the background.
+        if (!ambient) {
+            canvas.drawColor(mBackgroundColor);
+        }
+        else {
+            canvas.drawColor(Color.BLACK);
+        }
+
+        // Draw the date
+        //- calculate positions
+        float xOffsetDate = xOffsetCenter - (mDateWidth / 2);
+        float y = mYOffset + mHourPaint.getTextSize();
+        //- draw the date
+        canvas.drawText(mDateString,
+                xOffsetDate, y + mYDateOriginOffset, mDatePaint);
+
+        // Draw the separator
+        //- calculate positions
+        float xOffsetSeparator = xOffsetCenter - (mSeparatorWidth / 2);
+        y += mDatePaint.getTextSize() + mSeparatorVertMargin;
+        //- draw the separator
+        canvas.drawLine(xOffsetSeparator, y,
+                xOffsetSeparator + mSeparatorWidth, y,
+                mSeparatorPaint);
+
+        if (drawWeather && mTemperatureMin != null && mTemperatureMax != null) {
+            //- calculate positions
+            float widthTemperatureWithArt = mArtHeightWidth + mColonWidth + mTemperatureMaxWidth + mColonWidth + mTemperatureMinWidth;
+            float xOffsetArt = xOffsetCenter - (widthTemperatureWithArt / 2f);
+            float xOffsetTemperatureMax = xOffsetArt + mArtHeightWidth + mColonWidth;
+            float xOffsetTemperatureMin = xOffsetTemperatureMax + mTemperatureMaxWidth + mColonWidth;
+            y += mSeparatorVertMargin;
+
+            //- draw the art if weather condition exists
+            if (mArtBitmap != null) {
+                canvas.drawBitmap(
+                        mArtBitmap,
+                        xOffsetArt, y + (mYTemperatureDescent / 2), mArtPaint);
+            }
+
+            //- draw the temperature Max
+            canvas.drawText(mTemperatureMax,
+                    xOffsetTemperatureMax, y + mYTemperatureOriginOffset, mTemperatureMaxPaint);
+            //- draw the temperature Min
+            canvas.drawText(mTemperatureMin,
+                    xOffsetTemperatureMin, y + mYTemperatureOriginOffset, mTemperatureMinPaint);
+        }
+    }
+}
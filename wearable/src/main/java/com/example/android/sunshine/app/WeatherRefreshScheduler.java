@@ -0,0 +1,133 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app;
+
+import android.os.Handler;
+import android.os.Looper;
+import android.os.Message;
+import android.text.format.DateUtils;
+import android.util.Log;
+
+/**
+ * Asks the phone for the weather when it's due, rather than checking on every frame.
+ *
+ * The next request is due once the weather received last is older than the require interval,
+ * and a single message is posted for that moment, on a Handler of the scheduler's own so that
+ * the watch face's timer can't remove it along with its own messages.  When a request can't be sent, or
+ * the phone doesn't answer it, the next one waits twice as long as the last one, from
+ * {@link #MIN_BACKOFF_MS} up to {@link #MAX_BACKOFF_MS}.  Receiving the weather, or the phone
+ * becoming reachable again, starts over without waiting.
+ */
+class WeatherRefreshScheduler {
+    private static final String TAG = "WeatherRefreshScheduler";
+
+    static final long MIN_BACKOFF_MS = DateUtils.MINUTE_IN_MILLIS;
+    static final long MAX_BACKOFF_MS = 30 * DateUtils.MINUTE_IN_MILLIS;
+
+    interface Callback {
+        /**
+         * Asks the phone for the weather.
+         *
+         * @return false if the request couldn't be sent, e.g. the phone isn't reachable.
+         */
+        boolean onRefreshRequired();
+    }
+
+    private static final int MSG_REFRESH = 0;
+
+    private final Handler mHandler;
+    private final Callback mCallback;
+    private final long mRequireInterval;
+
+    private boolean mStarted;
+    // When the weather shown was received, per the phone.
+    private long mReceivedTime;
+    // The delay before retrying a request that got no answer, 0 if there's no request pending.
+    private long mBackoff;
+    private long mRetryTime;
+
+    WeatherRefreshScheduler(Looper looper, long requireInterval, Callback callback) {
+        mHandler = new Handler(looper) {
+            @Override
+            public void handleMessage(Message message) {
+                if (message.what == MSG_REFRESH) {
+                    refresh();
+                }
+            }
+        };
+        mRequireInterval = requireInterval;
+        mCallback = callback;
+    }
+
+    /**
+     * Schedules the next request, which is sent right away if the weather is already outdated.
+     */
+    void start() {
+        mStarted = true;
+        schedule();
+    }
+
+    void stop() {
+        mStarted = false;
+        mHandler.removeMessages(MSG_REFRESH);
+    }
+
+    void onWeatherReceived(long receivedTime) {
+        mReceivedTime = receivedTime;
+        mBackoff = 0;
+        mRetryTime = 0;
+        schedule();
+    }
+
+    void onPhoneReachable() {
+        mBackoff = 0;
+        mRetryTime = 0;
+        schedule();
+    }
+
+    /**
+     * @return whether a request is scheduled.
+     */
+    boolean isScheduled() {
+        return mHandler.hasMessages(MSG_REFRESH);
+    }
+
+    /**
+     * @return when the next request will be sent, in {@link System#currentTimeMillis} time.
+     */
+    long getNextRefreshTime() {
+        return Math.max(mReceivedTime + mRequireInterval, mRetryTime);
+    }
+
+    private void schedule() {
+        mHandler.removeMessages(MSG_REFRESH);
+        if (!mStarted) {
+            return;
+        }
+        long delay = Math.max(0, getNextRefreshTime() - System.currentTimeMillis());
+        Log.d(TAG, "schedule: next refresh in " + delay + " ms");
+        mHandler.sendEmptyMessageDelayed(MSG_REFRESH, delay);
+    }
+
+    private void refresh() {
+        boolean sent = mCallback.onRefreshRequired();
+        // Until the weather arrives, the request is retried later on, whether it was sent or not.
+        mBackoff = mBackoff == 0 ? MIN_BACKOFF_MS : Math.min(mBackoff * 2, MAX_BACKOFF_MS);
+        mRetryTime = System.currentTimeMillis() + mBackoff;
+        Log.d(TAG, "refresh: sent = " + sent + ", retry in " + mBackoff + " ms");
+        schedule();
+    }
+}